@@ -1,20 +1,98 @@
 package io.bankbridge;
+import static spark.Spark.afterAfter;
+import static spark.Spark.before;
+import static spark.Spark.delete;
 import static spark.Spark.get;
 import static spark.Spark.port;
+import static spark.Spark.post;
+import static spark.Spark.put;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.bankbridge.admission.AdminAccess;
+import io.bankbridge.admission.AdmissionControl;
 import io.bankbridge.handler.BanksCacheBased;
 import io.bankbridge.handler.BanksRemoteCalls;
+import io.bankbridge.handler.ShardRouter;
+import io.bankbridge.handler.Warmup;
+import io.bankbridge.model.Constants;
+import io.bankbridge.tracing.Tracing;
 
 public class Main {
 
 	public static void main(String[] args) throws Exception {
 		
-		port(8080);
+		port(Settings.getInt("port", Constants.DEFAULT_PORT));
+
+		// a router answers v1 queries from its shards and holds no v1 banks itself
+		boolean router = ShardRouter.init();
 
-		BanksCacheBased.init();
-		BanksRemoteCalls.init();
+		// the v1 cache and the v2 providers are independent, load them side by side
+		ExecutorService initExecutor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> v1 = initExecutor.submit(() -> {
+				if (!router)
+					BanksCacheBased.init();
+				return null;
+			});
+			Future<?> v2 = initExecutor.submit(() -> {
+				BanksRemoteCalls.init();
+				return null;
+			});
+			AdmissionControl.init();
+			AdminAccess.init();
+			awaitInit(v1);
+			awaitInit(v2);
+		} finally {
+			initExecutor.shutdown();
+		}
+		Startup.initialized();
+
+		before((request, response) -> Tracing.start(request, response));
+		before("/v1/banks/*", (request, response) -> AdminAccess.authorize(request, response));
+		before((request, response) -> AdmissionControl.admit(request, response));
+		afterAfter((request, response) -> AdmissionControl.release(request));
+		afterAfter((request, response) -> Tracing.finish(request, response));
+		afterAfter((request, response) -> Startup.recordResponse(request, response));
 		
-		get("/v1/banks/all", (request, response) -> BanksCacheBased.handle(request, response));
+		if (router) {
+			get("/v1/banks/all", (request, response) -> ShardRouter.handle(request, response));
+			get("/v1/banks/batch", (request, response) -> ShardRouter.handleNotRouted(request, response));
+			post("/v1/banks/batch", (request, response) -> ShardRouter.handleNotRouted(request, response));
+			get("/v1/banks/export", (request, response) -> ShardRouter.handleNotRouted(request, response));
+			put("/v1/banks/:bic", (request, response) -> ShardRouter.handleNotRouted(request, response));
+			delete("/v1/banks/:bic", (request, response) -> ShardRouter.handleNotRouted(request, response));
+			post("/v1/banks/changes", (request, response) -> ShardRouter.handleNotRouted(request, response));
+		} else {
+			get("/v1/banks/all", (request, response) -> BanksCacheBased.handle(request, response));
+			get("/v1/banks/batch", (request, response) -> BanksCacheBased.handleBatch(request, response));
+			post("/v1/banks/batch", (request, response) -> BanksCacheBased.handleBatch(request, response));
+			get("/v1/banks/export", (request, response) -> BanksCacheBased.handleExport(request, response));
+			put("/v1/banks/:bic", (request, response) -> BanksCacheBased.handleUpsert(request, response));
+			delete("/v1/banks/:bic", (request, response) -> BanksCacheBased.handleDelete(request, response));
+			post("/v1/banks/changes", (request, response) -> BanksCacheBased.handleChanges(request, response));
+		}
 		get("/v2/banks/all", (request, response) -> BanksRemoteCalls.handle(request, response));
+		get("/v2/banks/batch", (request, response) -> BanksRemoteCalls.handleBatch(request, response));
+		post("/v2/banks/batch", (request, response) -> BanksRemoteCalls.handleBatch(request, response));
+		get("/v2/banks/export", (request, response) -> BanksRemoteCalls.handleExport(request, response));
+
+		get("/status/remote-limits", (request, response) -> BanksRemoteCalls.handleLimits(request, response));
+
+		get("/replication/snapshot", (request, response) -> BanksRemoteCalls.handleSnapshot(request, response));
+
+		get("/status/ready", (request, response) -> Warmup.handleReady(request, response));
+		Warmup.start();
+	}
+
+	private static void awaitInit(Future<?> init) throws Exception {
+		try {
+			init.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
 	}
-}
\ No newline at end of file
+}
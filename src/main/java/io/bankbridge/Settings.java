@@ -0,0 +1,29 @@
+package io.bankbridge;
+
+/**
+ * Runtime settings, read from {@code bankbridge.*} system properties with defaults suited to a single local instance,
+ * e.g. {@code java -Dbankbridge.rateLimit.perSecond=20 io.bankbridge.Main}.
+ */
+public final class Settings {
+
+	private Settings() {
+	}
+
+	/**
+	 * @param name         the setting name, without the {@code bankbridge.} prefix
+	 * @param defaultValue the value used when the property is not set
+	 * @return the configured value
+	 */
+	public static int getInt(String name, int defaultValue) {
+		return Integer.getInteger("bankbridge." + name, defaultValue);
+	}
+
+	/**
+	 * @param name         the setting name, without the {@code bankbridge.} prefix
+	 * @param defaultValue the value used when the property is not set
+	 * @return the configured value
+	 */
+	public static String getString(String name, String defaultValue) {
+		return System.getProperty("bankbridge." + name, defaultValue);
+	}
+}
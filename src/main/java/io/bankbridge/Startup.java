@@ -0,0 +1,83 @@
+package io.bankbridge;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.bankbridge.model.Constants;
+import spark.Request;
+import spark.Response;
+
+/**
+ * Measures how long a restarted instance takes to become useful: the time from the start of the JVM until the
+ * handlers are initialized, and until the first successful answer to a bank query of either API version. The v1
+ * banks are served from memory and the v2 banks from the providers, so the two become useful at different times.
+ */
+public final class Startup {
+
+	private static final Logger logger = LoggerFactory.getLogger(Startup.class);
+
+	private static volatile long initializedMillis = -1;
+	private static final AtomicLong firstGoodV1ResponseMillis = new AtomicLong(-1);
+	private static final AtomicLong firstGoodV2ResponseMillis = new AtomicLong(-1);
+
+	private Startup() {
+	}
+
+	/**
+	 * Records that the handlers are initialized.
+	 */
+	public static void initialized() {
+		initializedMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+		logger.info("Initialized {} ms after JVM start", initializedMillis);
+	}
+
+	/**
+	 * Records the first successful bank query of each API version, a GET of {@code /v1/banks/all} or
+	 * {@code /v2/banks/all} answered with 200. Batches, exports and writes do not count. Meant to run as an
+	 * after-after filter.
+	 *
+	 * @param request  the finished request
+	 * @param response its response
+	 */
+	public static void recordResponse(Request request, Response response) {
+		if (response.status() != 200 || !Constants.GET.equals(request.requestMethod()))
+			return;
+		String path = request.pathInfo();
+		if ("/v1/banks/all".equals(path))
+			record(firstGoodV1ResponseMillis, "v1");
+		else if ("/v2/banks/all".equals(path))
+			record(firstGoodV2ResponseMillis, "v2");
+	}
+
+	private static void record(AtomicLong firstGoodResponseMillis, String version) {
+		if (firstGoodResponseMillis.get() >= 0)
+			return;
+		long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		if (firstGoodResponseMillis.compareAndSet(-1, uptime))
+			logger.info("First good {} response {} ms after JVM start", version, uptime);
+	}
+
+	/**
+	 * @return the time from JVM start until the handlers were initialized, -1 if not yet
+	 */
+	public static long getInitializedMillis() {
+		return initializedMillis;
+	}
+
+	/**
+	 * @return the time from JVM start until the first successful v1 bank query, -1 if none yet
+	 */
+	public static long getFirstGoodV1ResponseMillis() {
+		return firstGoodV1ResponseMillis.get();
+	}
+
+	/**
+	 * @return the time from JVM start until the first successful v2 bank query, -1 if none yet
+	 */
+	public static long getFirstGoodV2ResponseMillis() {
+		return firstGoodV2ResponseMillis.get();
+	}
+}
@@ -0,0 +1,59 @@
+package io.bankbridge.admission;
+
+import io.bankbridge.Settings;
+import io.bankbridge.model.Constants;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+import spark.utils.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static spark.Spark.halt;
+
+/**
+ * Guards the routes that change the v1 banks. They are closed unless {@code bankbridge.admin.apiKey} is set, and then
+ * only open to requests carrying that key in the {@code X-Admin-Key} header.
+ */
+public class AdminAccess {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdminAccess.class);
+
+    private static byte[] adminKey;
+
+    /**
+     * Reads the admin key.
+     */
+    public static void init() {
+        String key = Settings.getString("admin.apiKey", null);
+        adminKey = StringUtils.isNotBlank(key) ? key.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Halts write requests to the banks with 403 unless they carry the admin key. Meant to run as a before filter
+     * on {@code /v1/banks/*}, where every PUT and DELETE and the POST of a change log is a write.
+     *
+     * @param request  the incoming request
+     * @param response the response of the request
+     */
+    public static void authorize(Request request, Response response) {
+        if (!isWrite(request))
+            return;
+        String key = request.headers(Constants.HEADER_ADMIN_KEY);
+        // constant time, so the key cannot be guessed byte by byte
+        if (adminKey == null || key == null
+                || !MessageDigest.isEqual(adminKey, key.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Rejected {} {} without a valid admin key", request.requestMethod(), request.pathInfo());
+            halt(HttpStatus.FORBIDDEN_403, Constants.MSG_FORBIDDEN);
+        }
+    }
+
+    private static boolean isWrite(Request request) {
+        String method = request.requestMethod();
+        return Constants.PUT.equals(method) || Constants.DELETE.equals(method)
+                || (Constants.POST.equals(method) && "/v1/banks/changes".equals(request.pathInfo()));
+    }
+}
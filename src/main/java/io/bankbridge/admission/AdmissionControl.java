@@ -0,0 +1,181 @@
+package io.bankbridge.admission;
+
+import io.bankbridge.Settings;
+import io.bankbridge.model.Constants;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+import spark.utils.StringUtils;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static spark.Spark.halt;
+
+/**
+ * Admission control in front of the bank routes. Every request first has to fit into the global concurrency limit,
+ * of which lower priority routes may only fill a share (see {@link RoutePolicy}), and then has to pay its cost from
+ * the token bucket of its client. Rejected requests are answered immediately with 503 or 429 and a Retry-After header,
+ * instead of queueing up in front of the Jetty pool.
+ */
+public class AdmissionControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private static final String ATTR_ADMITTED = "admission.admitted";
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * Addresses of proxies, such as the shard router, whose {@code X-Forwarded-For} header names the client.
+     */
+    private static final Set<String> trustedProxies = new HashSet<>();
+
+    /**
+     * API keys that get a bucket of their own; any other key could be made up per request to dodge the limit.
+     */
+    private static final Set<String> apiKeys = new HashSet<>();
+
+    private static int maxConcurrent;
+    private static int maxClients;
+    private static int burst;
+    private static int perSecond;
+
+    /**
+     * Shared by all clients that arrive while the bucket map is full of active clients.
+     */
+    private static TokenBucket overflowBucket;
+
+    /**
+     * Reads the admission settings.
+     */
+    public static void init() {
+        maxConcurrent = Settings.getInt("admission.maxConcurrent", Constants.DEFAULT_MAX_CONCURRENT_REQUESTS);
+        maxClients = Settings.getInt("rateLimit.maxClients", Constants.DEFAULT_RATE_LIMIT_MAX_CLIENTS);
+        burst = Settings.getInt("rateLimit.burst", Constants.DEFAULT_RATE_LIMIT_BURST);
+        perSecond = Settings.getInt("rateLimit.perSecond", Constants.DEFAULT_RATE_LIMIT_PER_SECOND);
+        overflowBucket = new TokenBucket(burst, perSecond);
+        buckets.clear();
+        apiKeys.clear();
+        String keys = Settings.getString("rateLimit.apiKeys", null);
+        if (StringUtils.isNotBlank(keys)) {
+            for (String key : keys.split(","))
+                apiKeys.add(key.trim());
+        }
+        trustedProxies.clear();
+        String proxies = Settings.getString("admission.trustedProxies", null);
+        if (StringUtils.isNotBlank(proxies)) {
+            for (String proxy : proxies.split(","))
+                trustedProxies.add(proxy.trim());
+        }
+    }
+
+    /**
+     * Admits the request or halts it with 503 when the server is saturated for its route, or 429 when its client
+     * is over its rate limit. Meant to run as a before filter.
+     *
+     * @param request  the incoming request
+     * @param response the response, receiving the Retry-After header on rejection
+     */
+    public static void admit(Request request, Response response) {
+        RoutePolicy policy = RoutePolicy.of(request.pathInfo());
+        if (policy == null)
+            return;
+
+        int limit = Math.max(1, (int) (maxConcurrent * policy.getConcurrencyShare()));
+        if (inFlight.incrementAndGet() > limit) {
+            inFlight.decrementAndGet();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE_503, 1, Constants.MSG_SERVICE_UNAVAILABLE);
+        }
+
+        long waitNanos = bucketFor(clientKey(request)).tryAcquire(policy.getCost());
+        if (waitNanos > 0) {
+            inFlight.decrementAndGet();
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+            reject(response, HttpStatus.TOO_MANY_REQUESTS_429, retryAfter, Constants.MSG_TOO_MANY_REQUESTS);
+        }
+        request.attribute(ATTR_ADMITTED, Boolean.TRUE);
+    }
+
+    /**
+     * Releases the concurrency slot of an admitted request. Meant to run as an after-after filter,
+     * which Spark runs even when the route failed.
+     *
+     * @param request the finished request
+     */
+    public static void release(Request request) {
+        if (request.attribute(ATTR_ADMITTED) != null) {
+            request.raw().removeAttribute(ATTR_ADMITTED);
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of admitted requests currently being processed
+     */
+    public static int getInFlight() {
+        return inFlight.get();
+    }
+
+    private static void reject(Response response, int status, long retryAfterSeconds, String body) {
+        response.header("Retry-After", String.valueOf(retryAfterSeconds));
+        halt(status, body);
+    }
+
+    /**
+     * Returns the address of the client. For calls from a trusted proxy it is the last address the proxy added to
+     * the {@code X-Forwarded-For} header, so all clients behind the proxy do not share its rate limit.
+     *
+     * @param request the incoming request
+     * @return the IP address of the client
+     */
+    public static String clientIp(Request request) {
+        String forwardedFor = request.headers(Constants.HEADER_FORWARDED_FOR);
+        if (StringUtils.isBlank(forwardedFor) || !trustedProxies.contains(request.ip()))
+            return request.ip();
+        String clientIp = forwardedFor.substring(forwardedFor.lastIndexOf(',') + 1).trim();
+        return clientIp.isEmpty() ? request.ip() : clientIp;
+    }
+
+    /**
+     * Identifies the client by its API key if the key is configured in {@code bankbridge.rateLimit.apiKeys},
+     * otherwise by its IP address.
+     */
+    private static String clientKey(Request request) {
+        String apiKey = request.headers(Constants.HEADER_API_KEY);
+        return apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : "ip:" + clientIp(request);
+    }
+
+    /**
+     * Returns the bucket of the client. The map is bounded: when it is full, buckets of idle clients are dropped,
+     * at most once per sweep interval, and clients that still do not fit share the overflow bucket.
+     */
+    private static TokenBucket bucketFor(String clientKey) {
+        TokenBucket bucket = buckets.get(clientKey);
+        if (bucket != null)
+            return bucket;
+
+        if (buckets.size() >= maxClients) {
+            long last = lastSweep.get();
+            long now = System.nanoTime();
+            if (now - last > SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now)) {
+                buckets.values().removeIf(TokenBucket::isFull);
+                logger.debug("Swept idle rate-limit buckets, {} remaining", buckets.size());
+            }
+            if (buckets.size() >= maxClients)
+                return overflowBucket;
+        }
+        return buckets.computeIfAbsent(clientKey, key -> new TokenBucket(burst, perSecond));
+    }
+}
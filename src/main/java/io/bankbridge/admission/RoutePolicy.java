@@ -0,0 +1,48 @@
+package io.bankbridge.admission;
+
+/**
+ * Admission rules per kind of route. Cheap cache-backed routes may use the whole concurrency limit, while routes
+ * that fan out to remote providers or stream the whole directory are shed first and cost more rate-limit tokens.
+ */
+public enum RoutePolicy {
+
+    CACHE(1.0, 1),
+    REMOTE(0.5, 5),
+    EXPORT(0.25, 10);
+
+    private final double concurrencyShare;
+    private final double cost;
+
+    RoutePolicy(double concurrencyShare, double cost) {
+        this.concurrencyShare = concurrencyShare;
+        this.cost = cost;
+    }
+
+    /**
+     * @param path the request path
+     * @return the policy of the route, or null if the route is not subject to admission control
+     */
+    public static RoutePolicy of(String path) {
+        if (path.endsWith("/export"))
+            return EXPORT;
+        if (path.startsWith("/v1/"))
+            return CACHE;
+        if (path.startsWith("/v2/"))
+            return REMOTE;
+        return null;
+    }
+
+    /**
+     * @return the fraction of the global concurrency limit requests of this route may fill
+     */
+    public double getConcurrencyShare() {
+        return concurrencyShare;
+    }
+
+    /**
+     * @return the number of rate-limit tokens a request of this route costs
+     */
+    public double getCost() {
+        return cost;
+    }
+}
@@ -0,0 +1,61 @@
+package io.bankbridge.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free token bucket. The token count and the last refill time are swapped together through a single
+ * compare-and-set, so concurrent requests of the same client never block each other.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final AtomicReference<State> state;
+
+    /**
+     * @param capacity        the maximum number of tokens, i.e. the allowed burst
+     * @param tokensPerSecond the rate at which tokens are refilled
+     */
+    public TokenBucket(double capacity, double tokensPerSecond) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.state = new AtomicReference<>(new State(capacity, System.nanoTime()));
+    }
+
+    /**
+     * Tries to take tokens from the bucket.
+     *
+     * @param tokens the number of tokens the request costs
+     * @return 0 if the tokens were taken, otherwise the nanoseconds until enough tokens will be available
+     */
+    public long tryAcquire(double tokens) {
+        while (true) {
+            State current = state.get();
+            long now = System.nanoTime();
+            double available = Math.min(capacity, current.tokens + (now - current.timestamp) * tokensPerNano);
+            if (available < tokens)
+                return (long) Math.ceil((tokens - available) / tokensPerNano);
+            if (state.compareAndSet(current, new State(available - tokens, now)))
+                return 0;
+        }
+    }
+
+    /**
+     * @return true if the bucket has refilled completely, meaning the client has been idle for a while
+     */
+    boolean isFull() {
+        State current = state.get();
+        return current.tokens + (System.nanoTime() - current.timestamp) * tokensPerNano >= capacity;
+    }
+
+    private static final class State {
+        private final double tokens;
+        private final long timestamp;
+
+        private State(double tokens, long timestamp) {
+            this.tokens = tokens;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -1,10 +1,25 @@
 package io.bankbridge.handler;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.bankbridge.Settings;
+import io.bankbridge.model.BankChange;
 import io.bankbridge.model.BankModel;
 import io.bankbridge.model.BankModelList;
 import io.bankbridge.model.Constants;
 import io.bankbridge.model.Views;
+import io.bankbridge.query.BankQuery;
+import io.bankbridge.query.Condition;
+import io.bankbridge.query.FieldStatistics;
+import io.bankbridge.query.PageCollector;
+import io.bankbridge.query.QueryField;
+import io.bankbridge.query.SortSpec;
+import io.bankbridge.serialization.BankSerializer;
+import io.bankbridge.serialization.ResponseFormat;
+import io.bankbridge.store.BankDirectory;
+import io.bankbridge.tracing.Phase;
+import io.bankbridge.tracing.PhaseEvent;
+import io.bankbridge.tracing.Tracing;
 import org.eclipse.jetty.http.HttpStatus;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
@@ -17,8 +32,17 @@ import spark.Request;
 import spark.Response;
 import spark.utils.StringUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class BanksCacheBased {
 
@@ -28,23 +52,88 @@ public class BanksCacheBased {
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
-     * Initializes the cache manager and loads bank data into the cache.
+     * The cached banks and every structure derived from them, replaced as a whole by each change so readers work on
+     * one consistent version without locking. Sort indexes are added on first use.
+     */
+    private static final AtomicReference<BankDirectory> directory = new AtomicReference<>(BankDirectory.empty());
+
+    /**
+     * Serializes writers; readers never take it.
+     */
+    private static final Object writeLock = new Object();
+
+    private static int maxBanks;
+
+    private static final Set<QueryField> INDEXED_FIELDS = EnumSet.of(QueryField.BIC, QueryField.COUNTRY_CODE);
+
+    /**
+     * Number of cached banks per field value, for the query planner. Writers update it next to the directory rather
+     * than with it, so a query may see the counts of the version just before or after its own; they only serve as
+     * estimates.
+     */
+    private static final FieldStatistics statistics = new FieldStatistics();
+
+    /**
+     * The countries whose banks this instance holds when it runs as a shard behind a {@link ShardRouter}, empty if it
+     * holds all banks.
+     */
+    private static final Set<String> ownedCountries = new LinkedHashSet<>();
+
+    /**
+     * The countries whose banks this instance does not hold when it runs as the {@code *} shard of a
+     * {@link ShardRouter}, i.e. the countries of the other shards, empty if it holds all banks.
+     */
+    private static final Set<String> excludedCountries = new LinkedHashSet<>();
+
+    /**
+     * Initializes the cache manager and loads bank data into the directory.
+     * A second cache keeps encoded responses per query, projection and format, so repeated queries are neither
+     * executed nor serialized again.
      *
      * @throws Exception if there is an error during initialization or loading cache data
      */
     public static void init() throws Exception {
+        // banks are added through the change API, up to this many; the loading cache must hold all of them as well
+        maxBanks = Settings.getInt("banks.maxEntries", Constants.DEFAULT_MAX_BANKS);
+        String shardCountries = Settings.getString("shard.countries", null);
+        String shardExcludedCountries = Settings.getString("shard.excludedCountries", null);
+        if (StringUtils.isNotBlank(shardCountries) && StringUtils.isNotBlank(shardExcludedCountries))
+            throw new IllegalArgumentException("A shard either lists its countries or the countries it excludes");
+        if (StringUtils.isNotBlank(shardCountries)) {
+            for (String country : shardCountries.split(","))
+                ownedCountries.add(country.trim().toUpperCase(Locale.ROOT));
+            logger.info("Holding the banks of {}", ownedCountries);
+        }
+        if (StringUtils.isNotBlank(shardExcludedCountries)) {
+            for (String country : shardExcludedCountries.split(","))
+                excludedCountries.add(country.trim().toUpperCase(Locale.ROOT));
+            logger.info("Holding the banks of all countries but {}", excludedCountries);
+        }
         cacheManager = CacheManagerBuilder
                 .newCacheManagerBuilder().withCache("banks", CacheConfigurationBuilder
-                        .newCacheConfigurationBuilder(String.class, BankModel.class, ResourcePoolsBuilder.heap(20)))
+                        .newCacheConfigurationBuilder(String.class, BankModel.class, ResourcePoolsBuilder.heap(maxBanks)))
+                .withCache("responses", CacheConfigurationBuilder
+                        .newCacheConfigurationBuilder(String.class, byte[].class, ResourcePoolsBuilder.heap(
+                                Settings.getInt("responseCache.entries", Constants.DEFAULT_RESPONSE_CACHE_ENTRIES))))
                 .build();
         cacheManager.init();
-        Cache cache = cacheManager.getCache("banks", String.class, BankModel.class);
+        Cache<String, BankModel> cache = cacheManager.getCache("banks", String.class, BankModel.class);
         try {
             BankModelList models = objectMapper.readValue(
                     Thread.currentThread().getContextClassLoader().getResource("banks-v1.json"), BankModelList.class);
             for (BankModel model : models.getBanks()) {
+                if (!isOwned(model))
+                    continue;
                 cache.put(model.getBic(), model);
+                statistics.add(model);
             }
+            // the load order of the directory is the cache iteration order, the order unsorted results had so far
+            BankDirectory loaded = BankDirectory.empty();
+            for (Cache.Entry<String, BankModel> entry : cache)
+                loaded = loaded.upsert(entry.getValue());
+            directory.set(loaded);
+            // from here on the directory is the only copy of the banks
+            cacheManager.removeCache("banks");
         } catch (Exception e) {
             logger.error("Error loading cache data", e);
             throw e;
@@ -52,19 +141,31 @@ public class BanksCacheBased {
     }
 
     /**
-     * Handles the incoming request to filter and paginate bank models, and returns the result as a JSON string.
+     * Handles the incoming request to filter and paginate bank models, and returns the result in the format
+     * negotiated through the Accept header: JSON, CBOR or Smile.
+     * Encoded results are cached, so a repeated query is answered without executing or serializing it again.
      *
      * @param request  the request object containing filter and pagination parameters
-     * @param response the response object for setting the HTTP status in case of an error
-     * @return a JSON string representation of the filtered and paginated list of BankModel objects
+     * @param response the response object for setting the content type, or the HTTP status in case of an error
+     * @return the encoded list of filtered and paginated BankModel objects, or a JSON error message
      */
-    public static String handle(Request request, Response response) {
+    public static Object handle(Request request, Response response) {
 
+        String requestId = Tracing.requestId(request);
         try {
-            List<BankModel> filteredBanks = filterBanks(request);
-            List<BankModel> bankModel = getBanksBasedOnPagination(request, filteredBanks);
+            PhaseEvent phase = Tracing.begin(requestId, Phase.PARSE);
+            BankQuery query = BankQuery.compile(request, statistics);
+            BankSerializer serializer = BankSerializer.forRequest(request, Views.Cache.class);
+            ResponseFormat format = ResponseFormat.negotiate(request, response);
+            phase.done();
 
-            return objectMapper.writerWithView(Views.Cache.class).writeValueAsString(bankModel);
+            byte[] body = cachedResult(query, serializer, format, requestId);
+            response.type(format.getContentType());
+            return body;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid request: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
         } catch (Exception e) {
             logger.error("Error processing request", e);
             response.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
@@ -73,68 +174,417 @@ public class BanksCacheBased {
     }
 
     /**
-     * Filters the list of banks based on the query parameters provided in the request.
+     * Answers a query from the response cache, executing and encoding it on a miss.
+     */
+    private static byte[] cachedResult(BankQuery query, BankSerializer serializer, ResponseFormat format,
+                                       String requestId) throws IOException {
+        PhaseEvent phase = Tracing.begin(requestId, Phase.RESPONSE_CACHE);
+        // responses of older versions are no longer looked up and age out of the cache
+        BankDirectory banks = directory.get();
+        Cache<String, byte[]> responses = cacheManager.getCache("responses", String.class, byte[].class);
+        String cacheKey = banks.getVersion() + "|" + format + "|" + serializer.getKey() + "|" + query.getKey();
+        byte[] body = responses.get(cacheKey);
+        phase.done(body != null ? "hit" : "miss", -1, body != null ? body.length : -1);
+        if (body == null) {
+            body = result(banks, query, serializer, format, requestId);
+            responses.put(cacheKey, body);
+        }
+        return body;
+    }
+
+    private static byte[] result(BankDirectory banks, BankQuery query, BankSerializer serializer,
+                                 ResponseFormat format, String requestId) throws IOException {
+        List<BankModel> bankModels = execute(banks, query, requestId);
+        PhaseEvent phase = Tracing.begin(requestId, Phase.SERIALIZE);
+        byte[] body = format.encode(serializer, bankModels);
+        phase.done(format.name(), bankModels.size(), body.length);
+        return body;
+    }
+
+    /**
+     * Replays queries through parsing, execution and encoding so the JIT compiles the hot paths before the first
+     * client arrives. The replays bypass the response cache; a last round in JSON goes through it, so the queries
+     * are answered from the cache afterwards.
+     *
+     * @param queries    the query parameters of the replayed queries
+     * @param iterations the number of replays, spread over the queries and response formats
+     * @return the number of queries answered
+     * @throws IOException if encoding fails
+     */
+    static int warmUp(List<Map<String, String>> queries, int iterations) throws IOException {
+        ResponseFormat[] formats = ResponseFormat.values();
+        for (int i = 0; i < iterations; i++) {
+            Map<String, String> params = queries.get(i % queries.size());
+            BankQuery query = BankQuery.compile(params::get, statistics);
+            BankSerializer serializer = BankSerializer.of(Views.Cache.class,
+                    params.get(Constants.QUERY_PARAM_FIELDS));
+            result(directory.get(), query, serializer, formats[i / queries.size() % formats.length], "warmup");
+        }
+        for (Map<String, String> params : queries) {
+            cachedResult(BankQuery.compile(params::get, statistics),
+                    BankSerializer.of(Views.Cache.class, params.get(Constants.QUERY_PARAM_FIELDS)),
+                    ResponseFormat.JSON, "warmup");
+        }
+        return iterations + queries.size();
+    }
+
+    /**
+     * @return the banks currently held, in load order
+     */
+    static List<BankModel> banks() {
+        List<BankModel> bankModels = new ArrayList<>();
+        directory.get().all().forEach(bankModels::add);
+        return bankModels;
+    }
+
+    /**
+     * Handles a batch lookup of banks by BIC and returns the banks found in the negotiated format.
+     * The BICs are resolved through direct key lookups on the current version of the directory instead of scanning
+     * every entry, so a batch never sees half of a change log; unknown BICs are left out of the result.
+     * As in v2, a batch without any known BIC is answered with 204.
      *
-     * @param request the request object containing filter parameters
-     * @return a list of BankModel objects that match the filter criteria
+     * @param request  the request object carrying the BICs in the body or as repeated query parameters
+     * @param response the response object for setting the content type, or the HTTP status in case of an error
+     * @return the encoded list of found BankModel objects in the order they were requested, or a JSON error message
      */
-    private static List<BankModel> filterBanks(Request request) {
-        String countryCodeParam = request.queryParams(Constants.QUERY_PARAM_COUNTRYCODE);
-        String nameParam = request.queryParams(Constants.QUERY_PARAM_NAME);
-        String bicParam = request.queryParams(Constants.QUERY_PARAM_BIC);
-        String productParam = request.queryParams(Constants.QUERY_PARAM_PRODUCT);
+    public static Object handleBatch(Request request, Response response) {
 
-        List<BankModel> result = new ArrayList<>();
-        Cache<String, BankModel> cache = cacheManager.getCache("banks", String.class, BankModel.class);
+        String requestId = Tracing.requestId(request);
+        Set<String> bics;
+        BankSerializer serializer;
+        ResponseFormat format = ResponseFormat.negotiate(request, response);
+        try {
+            PhaseEvent phase = Tracing.begin(requestId, Phase.PARSE);
+            bics = BatchRequest.parseBics(request);
+            serializer = BankSerializer.forRequest(request, Views.Cache.class);
+            phase.done();
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Invalid batch request: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
+        }
 
-        cache.forEach(entry -> {
-            BankModel bankModel = entry.getValue();
-            if (matchesFilter(bankModel, countryCodeParam, nameParam, bicParam, productParam)) {
-                result.add(bankModel);
+        try {
+            PhaseEvent phase = Tracing.begin(requestId, Phase.EXECUTE);
+            BankDirectory banks = directory.get();
+            List<BankModel> bankModels = new ArrayList<>();
+            for (String bic : bics) {
+                BankModel bankModel = banks.get(bic);
+                if (bankModel != null)
+                    bankModels.add(bankModel);
+            }
+            phase.done("directory", bankModels.size(), -1);
+            if (bankModels.isEmpty()) {
+                response.status(HttpStatus.NO_CONTENT_204);
+                return Constants.MSG_NO_RESULTS;
             }
-        });
 
+            phase = Tracing.begin(requestId, Phase.SERIALIZE);
+            byte[] body = format.encode(serializer, bankModels);
+            phase.done(format.name(), bankModels.size(), body.length);
+            response.type(format.getContentType());
+            return body;
+        } catch (Exception e) {
+            logger.error("Error processing batch request", e);
+            response.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
+            return Constants.MSG_INTERNAL_SERVER;
+        }
+    }
+
+    /**
+     * Streams every bank matching the filter parameters as newline-delimited JSON, ordered by BIC.
+     * Banks are read one at a time from the version current at the start, so memory use does not depend on the number
+     * of banks exported and concurrent changes do not show up halfway.
+     * An interrupted export can be resumed by passing the last received BIC as the {@code after} parameter.
+     *
+     * @param request  the request object containing filter parameters and the optional BIC to resume after
+     * @param response the response object whose output stream receives the export
+     * @return an empty string, as the export is written directly to the response
+     */
+    public static String handleExport(Request request, Response response) {
+        BankQuery query;
+        BankSerializer serializer;
+        try {
+            query = BankQuery.compile(request, statistics);
+            serializer = BankSerializer.forRequest(request, Views.Cache.class);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid export request: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
+        }
+        String afterParam = request.queryParams(Constants.QUERY_PARAM_AFTER);
+
+        Iterable<BankModel> banks = directory.get().byBicAfter(StringUtils.isNotBlank(afterParam) ? afterParam : null);
+
+        PhaseEvent phase = Tracing.begin(Tracing.requestId(request), Phase.EXPORT);
+        int written = 0;
+        try (NdjsonWriter writer = NdjsonWriter.open(request, response, serializer)) {
+            for (BankModel bankModel : banks) {
+                if (query.matches(bankModel)) {
+                    writer.write(bankModel);
+                    written++;
+                }
+            }
+            phase.done(null, written, -1);
+        } catch (IOException e) {
+            phase.done("aborted", written, -1);
+            // the response is already committed, the client notices the truncated stream and can resume
+            logger.warn("Export aborted: {}", e.getMessage());
+        }
+        return "";
+    }
+
+    /**
+     * Executes the query against one version of the cached banks, choosing the cheapest way to produce the requested
+     * page:
+     * <ul>
+     * <li>an indexed lookup when a BIC or country code condition is the most selective one, or</li>
+     * <li>a scan of all banks, or of the sorted index when a sort was requested.</li>
+     * </ul>
+     * Scans stop as soon as the page is complete. The chosen access path is recorded with the execute phase.
+     *
+     * @param banks     the version to read
+     * @param query     the compiled query
+     * @param requestId the id of the request, for tracing
+     * @return the banks of the requested page in the requested order
+     */
+    private static List<BankModel> execute(BankDirectory banks, BankQuery query, String requestId) {
+        PhaseEvent phase = Tracing.begin(requestId, Phase.EXECUTE);
+        Condition access = query.getAccessCondition(INDEXED_FIELDS);
+
+        if (access != null && (query.getSort() == null || isIndexCheaperThanSortedScan(query, access))) {
+            PageCollector collector = query.newCollector(false);
+            for (BankModel bankModel : candidates(banks, access)) {
+                if (!collector.offer(bankModel))
+                    break;
+            }
+            List<BankModel> result = collector.getResult();
+            phase.done("index:" + access.getField().getParam(), result.size(), -1);
+            return result;
+        }
+
+        PageCollector collector = query.newCollector(true);
+        Iterable<BankModel> scan;
+        String accessPath;
+        if (query.getSort() != null) {
+            scan = sortedIndex(banks, query.getSort());
+            accessPath = "sorted:" + query.getSort().getKey();
+        } else {
+            scan = banks.all();
+            accessPath = "scan";
+        }
+        for (BankModel bankModel : scan) {
+            if (!collector.offer(bankModel))
+                break;
+        }
+        List<BankModel> result = collector.getResult();
+        phase.done(accessPath, result.size(), -1);
         return result;
     }
 
     /**
-     * Checks if the given BankModel matches the provided filter parameters.
+     * Compares the cost of reading every bank the index returns for the access condition with the expected number
+     * of banks a scan of the pre-sorted index reads before the page is complete.
      *
-     * @param bankModel the bank model to be checked against the filters
-     * @param countryCodeParam the country code to filter by, this variable can be blank
-     * @param nameParam the name to filter by, this variable can be blank
-     * @param bicParam the BIC to filter by, this variable can be blank
-     * @param productParam the product to filter by, this variable can be blank
-     * @return true if the bank model matches all non-blank filter parameters, false otherwise
+     * @param query  the compiled query
+     * @param access the indexed condition
+     * @return true if reading the index candidates and selecting the page with a heap is expected to be cheaper
      */
-    private static boolean matchesFilter(BankModel bankModel, String countryCodeParam, String nameParam, String bicParam, String productParam) {
-        return (StringUtils.isBlank(countryCodeParam) || countryCodeParam.equals(bankModel.getCountryCode())) &&
-                (StringUtils.isBlank(bicParam) || bicParam.equals(bankModel.getBic())) &&
-                (StringUtils.isBlank(productParam) || bankModel.getProducts().contains(productParam)) &&
-                (StringUtils.isBlank(nameParam) || bankModel.getName().contains(nameParam));
+    private static boolean isIndexCheaperThanSortedScan(BankQuery query, Condition access) {
+        double total = statistics.getTotal();
+        double matches = Math.max(1, query.estimateMatches(statistics));
+        double wanted = (double) query.getOffset() + query.getLimit();
+        double sortedScanCost = Math.min(total, wanted * total / matches);
+        return statistics.estimateMatches(access) <= sortedScanCost;
     }
 
     /**
-     * Retrieves a sublist of {@link BankModel} objects based on pagination parameters provided in the request.
+     * @param banks  the version to read
+     * @param access the indexed condition
+     * @return the banks that can match the condition
+     */
+    private static Iterable<BankModel> candidates(BankDirectory banks, Condition access) {
+        if (access.getField() == QueryField.BIC) {
+            BankModel bankModel = banks.get(access.getValue());
+            return bankModel != null ? Collections.singletonList(bankModel) : Collections.emptyList();
+        }
+        return banks.byCountry(access.getValue());
+    }
+
+    /**
+     * Returns the banks of the version in the requested order, building the index on first use and publishing it
+     * for later readers, unless a change has replaced the version in the meantime.
      *
-     * @param request the request object containing pagination parameters
-     * @param banks   the full list of banks to paginate
-     * @return a sublist of banks based on the specified page and page size
+     * @param banks    the version to read
+     * @param sortSpec the ordering
+     * @return all banks of the version in the requested order
      */
-    private static List<BankModel> getBanksBasedOnPagination(Request request, List<BankModel> banks) {
+    private static Iterable<BankModel> sortedIndex(BankDirectory banks, SortSpec sortSpec) {
+        Iterable<BankModel> index = banks.sorted(sortSpec);
+        if (index != null)
+            return index;
+        BankDirectory indexed = banks.withSortedIndex(sortSpec);
+        directory.compareAndSet(banks, indexed);
+        return indexed.sorted(sortSpec);
+    }
 
-        String pageStr = request.queryParams(Constants.QUERY_PARAM_PAGE);
-        String pageSizeStr = request.queryParams(Constants.QUERY_PARAM_PAGESIZE);
+    /**
+     * Adds or replaces a single bank. The BIC of the path wins over the one in the body.
+     *
+     * @param request  the request object carrying the BIC in the path and the bank as JSON body
+     * @param response the response object for setting the HTTP status in case of an error
+     * @return a JSON object with the new version
+     */
+    public static String handleUpsert(Request request, Response response) {
+        BankChange change = new BankChange();
+        change.setOp(BankChange.OP_UPSERT);
+        try {
+            BankModel bankModel = objectMapper.readValue(request.body(), BankModel.class);
+            if (bankModel == null)
+                throw new IllegalArgumentException("A bank is required");
+            bankModel.setBic(request.params(Constants.PATH_PARAM_BIC));
+            change.setBank(bankModel);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Invalid bank: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
+        }
+        return applyAndReport(Collections.singletonList(change), response, false);
+    }
 
-        int page = StringUtils.isNotBlank(pageStr) ? Integer.parseInt(pageStr) : 0;
-        int pageSize = StringUtils.isNotBlank(pageSizeStr) ? Integer.parseInt(pageSizeStr) : Constants.DEFAULT_PAGE_SIZE;
+    /**
+     * Removes a single bank.
+     *
+     * @param request  the request object carrying the BIC in the path
+     * @param response the response object for setting the HTTP status if the bank does not exist
+     * @return a JSON object with the new version
+     */
+    public static String handleDelete(Request request, Response response) {
+        BankChange change = new BankChange();
+        change.setOp(BankChange.OP_DELETE);
+        change.setBic(request.params(Constants.PATH_PARAM_BIC));
+        return applyAndReport(Collections.singletonList(change), response, true);
+    }
 
-        int fromIndex = (page - 1) * pageSize;
-        int toIndex = page * pageSize;
-        if (fromIndex >= 0 && toIndex > 0)
-            return banks.subList(fromIndex, toIndex);
-        return banks;
+    /**
+     * Applies a change log, a JSON array of upserts ({@code {"op":"upsert","bank":{...}}}) and deletions
+     * ({@code {"op":"delete","bic":"..."}}), in order and as one step: readers see either none or all of the changes.
+     * Deleting an absent BIC is not an error, so a log can be replayed. Changes are not replicated: they only reach
+     * the instance that receives them, so a writer sends the same log to every instance.
+     *
+     * @param request  the request object carrying the change log as body
+     * @param response the response object for setting the HTTP status in case of an error
+     * @return a JSON object with the new version and the number of changes that had an effect
+     */
+    public static String handleChanges(Request request, Response response) {
+        List<BankChange> changes;
+        try {
+            changes = objectMapper.readValue(request.body(), new TypeReference<List<BankChange>>() {
+            });
+            if (changes == null || changes.size() > Constants.MAX_CHANGES_PER_REQUEST)
+                throw new IllegalArgumentException("Between 0 and " + Constants.MAX_CHANGES_PER_REQUEST
+                        + " changes can be applied at once");
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Invalid change log: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
+        }
+        return applyAndReport(changes, response, false);
+    }
+
+    private static String applyAndReport(List<BankChange> changes, Response response, boolean requireEffect) {
+        try {
+            int applied = applyChanges(changes);
+            if (requireEffect && applied == 0) {
+                response.status(HttpStatus.NOT_FOUND_404);
+                return Constants.MSG_NOT_FOUND;
+            }
+            return "{\"version\": " + directory.get().getVersion() + ", \"applied\": " + applied + "}";
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid change: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
+        } catch (Exception e) {
+            logger.error("Error applying changes", e);
+            response.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
+            return Constants.MSG_INTERNAL_SERVER;
+        }
     }
 
+    /**
+     * Applies changes to the field statistics and a new version of the directory, which is published once
+     * all changes are in. Each change costs O(log n) per derived structure; cached responses are dropped in O(1), as
+     * their keys carry the version.
+     *
+     * @param changes the changes, in order
+     * @return the number of changes that had an effect
+     * @throws IllegalArgumentException if a change is invalid or the store would exceed its capacity; nothing is
+     *                                  applied then
+     */
+    private static int applyChanges(List<BankChange> changes) {
+        for (BankChange change : changes)
+            validate(change);
+
+        synchronized (writeLock) {
+            BankDirectory current = directory.get();
+            BankDirectory next = current;
+            Map<String, BankModel> upserts = new LinkedHashMap<>();
+            Set<String> deletes = new LinkedHashSet<>();
+            int applied = 0;
+            for (BankChange change : changes) {
+                BankDirectory changed;
+                if (BankChange.OP_UPSERT.equals(change.getOp())) {
+                    changed = next.upsert(change.getBank());
+                    upserts.put(change.getBank().getBic(), change.getBank());
+                    deletes.remove(change.getBank().getBic());
+                } else {
+                    changed = next.remove(change.getBic());
+                    upserts.remove(change.getBic());
+                    deletes.add(change.getBic());
+                }
+                if (changed != next)
+                    applied++;
+                next = changed;
+            }
+            if (next.size() > maxBanks)
+                throw new IllegalArgumentException("The store holds at most " + maxBanks + " banks");
+
+            for (BankModel bankModel : upserts.values())
+                statistics.replace(current.get(bankModel.getBic()), bankModel);
+            for (String bic : deletes)
+                statistics.remove(current.get(bic));
+            directory.set(next);
+            return applied;
+        }
+    }
+
+    private static void validate(BankChange change) {
+        if (change == null)
+            throw new IllegalArgumentException("A change is required");
+        if (BankChange.OP_UPSERT.equals(change.getOp())) {
+            BankModel bankModel = change.getBank();
+            if (bankModel == null || StringUtils.isBlank(bankModel.getBic()))
+                throw new IllegalArgumentException("An upsert needs a bank with a BIC");
+            if (change.getBic() != null && !change.getBic().equals(bankModel.getBic()))
+                throw new IllegalArgumentException("BIC of the change and of the bank differ");
+            if (!isOwned(bankModel))
+                throw new IllegalArgumentException("Country " + bankModel.getCountryCode() + " belongs to another shard");
+        } else if (BankChange.OP_DELETE.equals(change.getOp())) {
+            if (StringUtils.isBlank(change.getBic()))
+                throw new IllegalArgumentException("A delete needs a BIC");
+        } else {
+            throw new IllegalArgumentException("Unknown change: " + change.getOp());
+        }
+    }
 
+    /**
+     * @return true if the bank's country is held by this instance
+     */
+    private static boolean isOwned(BankModel bankModel) {
+        String countryCode = bankModel.getCountryCode() != null
+                ? bankModel.getCountryCode().toUpperCase(Locale.ROOT) : null;
+        if (!ownedCountries.isEmpty())
+            return countryCode != null && ownedCountries.contains(countryCode);
+        return countryCode == null || !excludedCountries.contains(countryCode);
+    }
 }
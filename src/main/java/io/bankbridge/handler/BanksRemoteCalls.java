@@ -1,13 +1,45 @@
 package io.bankbridge.handler;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.bankbridge.Settings;
 import io.bankbridge.model.BankModel;
 import io.bankbridge.model.Constants;
 import io.bankbridge.model.Views;
+import io.bankbridge.query.BankQuery;
+import io.bankbridge.query.Condition;
+import io.bankbridge.query.FieldStatistics;
+import io.bankbridge.query.PageCollector;
+import io.bankbridge.query.QueryField;
+import io.bankbridge.remote.AdaptiveConcurrencyLimiter;
+import io.bankbridge.remote.Deadline;
+import io.bankbridge.remote.PayloadTooLargeException;
+import io.bankbridge.remote.RefreshScheduler;
+import io.bankbridge.remote.SizeLimitedInputStream;
+import io.bankbridge.replication.ReplicationFollower;
+import io.bankbridge.replication.ReplicationLog;
+import io.bankbridge.replication.ReplicationSnapshot;
+import io.bankbridge.replication.SnapshotFile;
+import io.bankbridge.remote.RemoteLimiters;
+import io.bankbridge.serialization.BankSerializer;
+import io.bankbridge.serialization.ResponseFormat;
+import io.bankbridge.tracing.Phase;
+import io.bankbridge.tracing.PhaseEvent;
+import io.bankbridge.tracing.RemoteFetchEvent;
+import io.bankbridge.tracing.Tracing;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.eclipse.jetty.http.HttpStatus;
 import org.slf4j.Logger;
@@ -16,47 +48,280 @@ import spark.Request;
 import spark.Response;
 import spark.utils.StringUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class BanksRemoteCalls {
 
     private static final Logger logger = LoggerFactory.getLogger(BanksRemoteCalls.class);
     private static Map<String, String> config;
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static CloseableHttpClient httpClient;
 
     /**
-     * Initializes the configuration by loading bank data from a JSON file.
+     * Parses remote bodies straight from the connection. The reader is immutable and shared by all fetch threads;
+     * Jackson recycles its parse buffers per thread. Trailing content after the bank is rejected. The reader leaves
+     * the stream open, because closing an entity stream drains the rest of the body.
+     */
+    private static final ObjectReader bankReader = objectMapper.readerFor(BankModel.class)
+            .with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS)
+            .without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    private static int maxPayloadBytes;
+
+    /**
+     * Parses the answers of bulk endpoints: the banks keyed by the path of their single-bank URL.
+     */
+    private static final ObjectReader bulkReader = objectMapper.readerFor(new TypeReference<Map<String, BankModel>>() {
+            })
+            .with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS)
+            .without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    /**
+     * Bulk endpoint per remote host and port, for the hosts that serve several banks in one call.
+     */
+    private static final Map<String, String> bulkEndpoints = new ConcurrentHashMap<>();
+    private static int bulkMaxBanks;
+
+    /**
+     * Time budget of every provider call of an export, which has no client deadline to go by.
+     */
+    private static int exportFetchMillis;
+
+    /**
+     * BIC to provider name, learned from the remote responses so batch lookups only call the providers they need.
+     */
+    private static final Map<String, String> bicToProvider = new ConcurrentHashMap<>();
+
+    /**
+     * Last bank received per provider, so the statistics reflect each provider once.
+     */
+    private static final Map<String, BankModel> lastFetched = new ConcurrentHashMap<>();
+
+    /**
+     * When the bank in {@link #lastFetched} was received, per provider.
+     */
+    private static final Map<String, Long> lastFetchedAt = new ConcurrentHashMap<>();
+
+    /**
+     * Field statistics learned from the remote responses, used to order the filter conditions.
+     */
+    private static final FieldStatistics statistics = new FieldStatistics();
+
+    private static final Set<QueryField> INDEXED_FIELDS = EnumSet.of(QueryField.BIC);
+
+    private static ExecutorService fetchExecutor;
+
+    /**
+     * Keeps the fetched banks fresh in the background, null when queries are answered with live fetches only.
+     */
+    private static RefreshScheduler refreshScheduler;
+    private static ScheduledExecutorService refreshTicker;
+    private static long maxStaleNanos;
+
+    /**
+     * Every fetched bank, served to followers on the snapshot route.
+     */
+    private static final ReplicationLog replicationLog = new ReplicationLog();
+
+    /**
+     * Pulls the banks from the leader instance, null unless {@code bankbridge.replication.leader} is set.
+     */
+    private static ReplicationFollower follower;
+
+    /**
+     * Persists the fetched banks for the next start, null unless {@code bankbridge.remote.snapshotFile} is set.
+     */
+    private static SnapshotFile snapshotFile;
+
+    /**
+     * Providers whose bank was restored from the snapshot file and not fetched since; their banks are served while
+     * fresh ones are fetched in the background.
+     */
+    private static final Set<String> restoredProviders = ConcurrentHashMap.newKeySet();
+    private static volatile int restoredBanks;
+
+    /**
+     * Initializes the configuration by loading the provider URLs from {@code banks-v2.json}, or from the file named by
+     * {@code bankbridge.remote.config}.
+     * With a refresh budget configured ({@code bankbridge.remote.refresh.perSecond}), fetched banks are cached and
+     * refreshed by a {@link RefreshScheduler}, and queries use cached banks that are not older than
+     * {@code bankbridge.remote.refresh.maxStaleMillis}.
+     * <p>
+     * With a leader configured ({@code bankbridge.replication.leader}), this instance is a follower: it takes the
+     * banks from the leader's snapshots instead of calling the providers, and only fetches on its own, live or through
+     * its refresh scheduler, while the leader is gone.
+     * <p>
+     * With a snapshot file configured ({@code bankbridge.remote.snapshotFile}), the fetched banks are written to it
+     * as they change, and the banks found in it at start are served, if not older than
+     * {@code bankbridge.remote.refresh.maxStaleMillis}, until their providers are fetched again.
+     * <p>
+     * Hosts listed with a bulk endpoint ({@code bankbridge.remote.bulkEndpoints}) have the banks of all their
+     * providers fetched in one call when a query fans out, see {@link #fetchAll}.
      *
      * @throws Exception if there is an error during initialization or reading the JSON file
      */
     public static void init() throws Exception {
-        config = objectMapper
-                .readValue(Thread.currentThread().getContextClassLoader().getResource("banks-v2.json"), Map.class);
+        String configPath = Settings.getString("remote.config", null);
+        config = objectMapper.readValue(StringUtils.isNotBlank(configPath) ? Paths.get(configPath).toUri().toURL()
+                : Thread.currentThread().getContextClassLoader().getResource("banks-v2.json"), Map.class);
+        // the per-host adaptive limiters decide how many calls run concurrently, the pool only has to keep up
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        int maxPerHost = Settings.getInt("remote.maxLimit", Constants.DEFAULT_REMOTE_MAX_LIMIT);
+        connectionManager.setDefaultMaxPerRoute(maxPerHost);
+        connectionManager.setMaxTotal(maxPerHost * 4);
+        httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+        maxPayloadBytes = Settings.getInt("remote.maxPayloadBytes", Constants.DEFAULT_REMOTE_MAX_PAYLOAD_BYTES);
+        fetchExecutor = Executors.newFixedThreadPool(
+                Settings.getInt("remote.fetchThreads", Constants.DEFAULT_REMOTE_FETCH_THREADS), runnable -> {
+                    Thread thread = new Thread(runnable, "remote-fetch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        String bulk = Settings.getString("remote.bulkEndpoints", null);
+        if (StringUtils.isNotBlank(bulk)) {
+            for (String endpoint : bulk.split(","))
+                bulkEndpoints.put(hostOf(endpoint.trim()), endpoint.trim());
+        }
+        bulkMaxBanks = Settings.getInt("remote.bulkMaxBanks", Constants.DEFAULT_REMOTE_BULK_MAX_BANKS);
+        exportFetchMillis = Settings.getInt("remote.exportFetchMillis", Constants.DEFAULT_EXPORT_FETCH_MILLIS);
+
+        maxStaleNanos = TimeUnit.MILLISECONDS.toNanos(Settings.getInt("remote.refresh.maxStaleMillis",
+                Constants.DEFAULT_REFRESH_MAX_STALE_MILLIS));
+
+        String snapshotPath = Settings.getString("remote.snapshotFile", null);
+        if (StringUtils.isNotBlank(snapshotPath)) {
+            snapshotFile = new SnapshotFile(Paths.get(snapshotPath), replicationLog);
+            restore(snapshotFile.load());
+            snapshotFile.start(Settings.getInt("remote.snapshotWriteMillis", Constants.DEFAULT_SNAPSHOT_WRITE_MILLIS));
+        }
+
+        String leader = Settings.getString("replication.leader", null);
+        if (StringUtils.isNotBlank(leader)) {
+            follower = new ReplicationFollower(leader,
+                    Settings.getInt("replication.failoverMillis", Constants.DEFAULT_REPLICATION_FAILOVER_MILLIS),
+                    BanksRemoteCalls::store, httpClient);
+            // start with the leader's data if it is up, the poller catches up otherwise
+            follower.pull();
+            follower.start(Settings.getInt("replication.pollMillis", Constants.DEFAULT_REPLICATION_POLL_MILLIS));
+        }
+
+        int refreshPerSecond = Settings.getInt("remote.refresh.perSecond", Constants.DEFAULT_REFRESH_PER_SECOND);
+        if (refreshPerSecond > 0) {
+            int minIntervalMillis = Settings.getInt("remote.refresh.minIntervalMillis",
+                    Constants.DEFAULT_REFRESH_MIN_INTERVAL_MILLIS);
+            // a refresh slower than the shortest interval is of no use
+            refreshScheduler = new RefreshScheduler(refreshPerSecond, minIntervalMillis,
+                    Settings.getInt("remote.refresh.maxIntervalMillis", Constants.DEFAULT_REFRESH_MAX_INTERVAL_MILLIS),
+                    provider -> {
+                        if (!isLeaderAvailable())
+                            fetchBank(provider, config.get(provider), "refresh", Deadline.in(minIntervalMillis));
+                    },
+                    fetchExecutor, System::nanoTime);
+            refreshScheduler.registerAll(config.keySet());
+            refreshTicker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "remote-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refreshTicker.scheduleWithFixedDelay(refreshScheduler::tick, Constants.REFRESH_TICK_MILLIS,
+                    Constants.REFRESH_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes over the banks of a snapshot left by a previous run, for the providers still configured.
+     */
+    private static void restore(ReplicationSnapshot snapshot) {
+        if (snapshot == null)
+            return;
+        long now = System.nanoTime();
+        for (Map.Entry<String, ReplicationSnapshot.ReplicatedBank> entry : snapshot.getBanks().entrySet()) {
+            if (!config.containsKey(entry.getKey()) || entry.getValue().getBank() == null)
+                continue;
+            store(entry.getKey(), entry.getValue().getBank(),
+                    now - TimeUnit.MILLISECONDS.toNanos(entry.getValue().getAgeMillis()));
+            restoredProviders.add(entry.getKey());
+        }
+        restoredBanks = restoredProviders.size();
+        logger.info("Restored {} banks from the snapshot file", restoredBanks);
     }
 
     /**
      * Handles the incoming request to retrieve bank models based on filter parameters and pagination,
-     * and returns the result as a JSON string.
+     * and returns the result in the format negotiated through the Accept header: JSON, CBOR or Smile.
+     * The client can bound the time it waits with a deadline; banks that have not arrived by then, or whose
+     * provider failed, are left out and their providers are listed in the {@code X-Missing-Providers} header,
+     * together with {@code X-Result-Complete: false}.
      *
-     * @param request  the request object containing filter and pagination parameters
-     * @param response the response object for setting the HTTP status in case of an error or no content
-     * @return a JSON string representation of the filtered and paginated list of BankModel objects,
-     * or an appropriate message if no results are found or an error occurs
+     * @param request  the request object containing filter, pagination and deadline parameters
+     * @param response the response object for setting the content type, or the HTTP status in case of an error
+     *                 or no content
+     * @return the encoded list of filtered and paginated BankModel objects,
+     * or an appropriate JSON message if no results are found or an error occurs
      */
-    public static String handle(Request request, Response response) {
-        String resultAsString = null;
+    public static Object handle(Request request, Response response) {
+        Object resultAsString = null;
+        String requestId = Tracing.requestId(request);
 
         try {
-            List<BankModel> bankModels = getBanks(request);
-            if (!bankModels.isEmpty())
-                resultAsString = objectMapper.writerWithView(Views.RemoteCall.class).writeValueAsString(bankModels);
-            else {
+            PhaseEvent phase = Tracing.begin(requestId, Phase.PARSE);
+            Deadline deadline = Deadline.fromRequest(request);
+            BankSerializer serializer = BankSerializer.forRequest(request, Views.RemoteCall.class);
+            ResponseFormat format = ResponseFormat.negotiate(request, response);
+            BankQuery query = BankQuery.compile(request, statistics);
+            phase.done();
+
+            phase = Tracing.begin(requestId, Phase.REMOTE_FETCH);
+            Set<String> missingProviders = new LinkedHashSet<>();
+            List<BankModel> bankModels = getBanks(query, requestId, deadline, missingProviders);
+            recordDemand(bankModels);
+            phase.done(missingProviders.isEmpty() ? null : "missing:" + String.join(",", missingProviders),
+                    bankModels.size(), -1);
+            if (!missingProviders.isEmpty()) {
+                response.header(Constants.HEADER_RESULT_COMPLETE, "false");
+                response.header(Constants.HEADER_MISSING_PROVIDERS, String.join(",", missingProviders));
+            }
+            if (!bankModels.isEmpty()) {
+                phase = Tracing.begin(requestId, Phase.SERIALIZE);
+                byte[] body = format.encode(serializer, bankModels);
+                phase.done(format.name(), bankModels.size(), body.length);
+                response.type(format.getContentType());
+                resultAsString = body;
+            } else if (!missingProviders.isEmpty()) {
+                response.status(deadline.isExpired() ? HttpStatus.GATEWAY_TIMEOUT_504 : HttpStatus.BAD_GATEWAY_502);
+                resultAsString = Constants.MSG_PROVIDERS_UNAVAILABLE;
+            } else {
                 response.status(HttpStatus.NO_CONTENT_204);
                 resultAsString = "{\"message\": \"No Results Found.\"}";
             }
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid request: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            resultAsString = Constants.MSG_BAD_REQUEST;
         } catch (Exception e) {
             e.printStackTrace();
             response.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
@@ -66,92 +331,764 @@ public class BanksRemoteCalls {
     }
 
     /**
-     * Retrieves a list of bank models based on the filter and pagination parameters provided in the request.
-     * Fetches bank data from external sources configured in the config map.
+     * Retrieves a list of bank models matching the query.
+     * Fetches bank data from external sources configured in the config map. A BIC filter for a provider that is
+     * already known only calls that provider. Otherwise all providers are fetched concurrently, within the
+     * limits of their hosts, and their banks are consumed in configuration order until the requested page is
+     * complete; fetches that are no longer needed are cancelled. Hosts with a bulk endpoint serve all their
+     * providers in one call. Providers with a fresh enough cached bank are not called.
      *
-     * @param request the request object containing filter and pagination parameters
+     * @param query            the compiled query
+     * @param requestId        the id of the request, for tracing
+     * @param deadline         the time by which the result is due
+     * @param missingProviders receives the providers that failed or did not answer before the deadline
      * @return a list of BankModel objects that match the filter criteria
-     * @throws Exception if there is an error during the process of fetching or parsing bank data
+     * @throws InterruptedException if the request thread was interrupted while waiting for the providers
      */
-    private static List<BankModel> getBanks(Request request) throws Exception {
-        String countryCode = request.queryParams(Constants.QUERY_PARAM_COUNTRYCODE);
-        String nameParam = request.queryParams(Constants.QUERY_PARAM_NAME);
-        String bicParam = request.queryParams(Constants.QUERY_PARAM_BIC);
-        String authParam = request.queryParams(Constants.QUERY_PARAM_AUTH);
-        String pageStr = request.queryParams(Constants.QUERY_PARAM_PAGE);
-        String pageSizeStr = request.queryParams(Constants.QUERY_PARAM_PAGESIZE);
-
-        int page = StringUtils.isNotBlank(pageStr) ? Integer.parseInt(pageStr) : 0;
-        int pageSize = StringUtils.isNotBlank(pageSizeStr) ? Integer.parseInt(pageSizeStr) : Constants.DEFAULT_PAGE_SIZE;
-
-        List<BankModel> bankModels = new ArrayList<>();
-
-        int fromIndex = (page - 1) * pageSize;
-        int toIndex = page * pageSize;
-        for (Entry<String, String> entry : config.entrySet()) {
-            // TODO Improve the logic to have a retry attempt on failures
-            CloseableHttpClient httpclient = HttpClients.createDefault();
-            HttpGet httpget = new HttpGet(entry.getValue());
-            try (CloseableHttpResponse response = httpclient.execute(httpget)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                if (isSuccessfulResponse(statusCode)) {
-                    String responseString = EntityUtils.toString(response.getEntity());
-                    BankModel bankModel = objectMapper.readValue(responseString, BankModel.class);
-                    if (matchesFilter(bankModel, countryCode, nameParam, bicParam, authParam)) {
-                        bankModels.add(bankModel);
-                    }
+    private static List<BankModel> getBanks(BankQuery query, String requestId, Deadline deadline,
+                                            Set<String> missingProviders) throws InterruptedException {
+        Condition access = query.getAccessCondition(INDEXED_FIELDS);
+        String knownProvider = access != null ? bicToProvider.get(access.getValue()) : null;
+        if (knownProvider != null && config.containsKey(knownProvider)) {
+            PageCollector collector = query.newCollector(false);
+            try {
+                BankModel bankModel = cachedBank(knownProvider);
+                if (bankModel == null)
+                    bankModel = fetchBank(knownProvider, config.get(knownProvider), requestId, deadline);
+                if (bankModel != null && access.test(bankModel)) {
+                    collector.offer(bankModel);
+                    return collector.getResult();
                 }
+                // the provider now serves another bank, fall back to asking every provider
             } catch (Exception e) {
-                logger.error("Error fetching bank data from {}", entry.getValue(), e);
-                throw e;
+                missingProviders.add(knownProvider);
+                return collector.getResult();
+            }
+        }
+
+        Map<String, Future<BankModel>> fetches = cachedOrFetchAll(new ArrayList<>(config.keySet()), requestId,
+                deadline);
+        PageCollector collector = query.newCollector(false);
+        try {
+            for (Entry<String, Future<BankModel>> fetch : fetches.entrySet()) {
+                BankModel bankModel;
+                try {
+                    bankModel = deadline.await(fetch.getValue());
+                } catch (TimeoutException | ExecutionException e) {
+                    missingProviders.add(fetch.getKey());
+                    continue;
+                }
+                if (!collector.offer(bankModel))
+                    break;
+            }
+        } finally {
+            for (Future<BankModel> fetch : fetches.values()) {
+                fetch.cancel(true);
             }
         }
+        return collector.getResult();
+    }
 
-        return paginate(bankModels, fromIndex, toIndex);
+    /**
+     * Fetches every provider once, concurrently, so the pool holds open connections to every host, the parsing path
+     * is compiled and the cached banks, if any, are filled. Skipped while a leader serves the banks.
+     *
+     * @param deadlineMillis the time the fetches may take
+     * @return the number of providers that answered
+     * @throws InterruptedException if the thread was interrupted while waiting for the providers
+     */
+    static int preconnect(long deadlineMillis) throws InterruptedException {
+        if (isLeaderAvailable())
+            return 0;
+        Deadline deadline = Deadline.in(deadlineMillis);
+        int answered = 0;
+        for (Future<BankModel> fetch : fetchAll(new ArrayList<>(config.keySet()), "warmup", deadline).values()) {
+            try {
+                if (deadline.await(fetch) != null)
+                    answered++;
+            } catch (TimeoutException | ExecutionException e) {
+                fetch.cancel(true);
+            }
+        }
+        return answered;
     }
 
     /**
-     * Validates if the given BankModel matches the provided filter parameters.
+     * Replays queries through parsing, page collection and encoding so the JIT compiles the hot paths before the
+     * first client arrives. The replays read the banks fetched last, in configuration order, rather than calling the
+     * providers again: {@link #preconnect} has already been through the fetch path, and a fan-out per replay would
+     * multiply the load on the providers by the number of replays.
      *
-     * @param bankModel   the bank model to be checked against the filters
-     * @param countryCode the country code to filter by, can be blank
-     * @param nameParam   the name to filter by, can be blank
-     * @param bicParam    the BIC to filter by, can be blank
-     * @param authParam   the authorization parameter to filter by, can be blank
-     * @return true if the bank model matches all non-blank filter parameters, false otherwise
+     * @param queries    the query parameters of the replayed queries
+     * @param iterations the number of replays, spread over the queries and response formats
+     * @return the number of queries answered
+     * @throws Exception if encoding fails
      */
-    private static boolean matchesFilter(BankModel bankModel, String countryCode, String nameParam, String bicParam, String authParam) {
-        return (StringUtils.isBlank(countryCode) || countryCode.equals(bankModel.getCountryCode())) &&
-                (StringUtils.isBlank(bicParam) || bicParam.equals(bankModel.getBic())) &&
-                (StringUtils.isBlank(authParam) || authParam.equals(bankModel.getAuth())) &&
-                (StringUtils.isBlank(nameParam) || bankModel.getName().equals(nameParam));
+    static int warmUp(List<Map<String, String>> queries, int iterations) throws Exception {
+        List<BankModel> fetched = new ArrayList<>();
+        for (String provider : config.keySet()) {
+            BankModel bankModel = lastFetched.get(provider);
+            if (bankModel != null)
+                fetched.add(bankModel);
+        }
+        ResponseFormat[] formats = ResponseFormat.values();
+        for (int i = 0; i < iterations; i++) {
+            Map<String, String> params = queries.get(i % queries.size());
+            PageCollector collector = BankQuery.compile(params::get, statistics).newCollector(false);
+            for (BankModel bankModel : fetched) {
+                if (!collector.offer(bankModel))
+                    break;
+            }
+            List<BankModel> bankModels = collector.getResult();
+            formats[i / queries.size() % formats.length].encode(
+                    BankSerializer.of(Views.RemoteCall.class, params.get(Constants.QUERY_PARAM_FIELDS)), bankModels);
+        }
+        return iterations;
     }
 
     /**
-     * Checks if the given HTTP status code indicates a successful response.
+     * @return the number of banks restored from the snapshot file at start
+     */
+    static int getRestoredBanks() {
+        return restoredBanks;
+    }
+
+    /**
+     * @return the last fetched bank of every provider
+     */
+    static List<BankModel> banks() {
+        return new ArrayList<>(lastFetched.values());
+    }
+
+    /**
+     * Reports the current adaptive concurrency limit and load of every remote host as a JSON string.
      *
-     * @param statusCode the HTTP status code to check
-     * @return true if the status code is 200, 201, or 202, false otherwise
+     * @param request  the request object
+     * @param response the response object for setting the HTTP status in case of an error
+     * @return a JSON object keyed by host
      */
-    private static boolean isSuccessfulResponse(int statusCode) {
-        return statusCode == HttpStatus.OK_200 || statusCode == HttpStatus.CREATED_201 || statusCode == HttpStatus.ACCEPTED_202;
+    public static String handleLimits(Request request, Response response) {
+        try {
+            return objectMapper.writeValueAsString(RemoteLimiters.snapshot());
+        } catch (Exception e) {
+            logger.error("Error reporting remote limits", e);
+            response.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
+            return Constants.MSG_INTERNAL_SERVER;
+        }
+    }
+
+    /**
+     * Handles a batch lookup of banks by BIC and returns the banks found in the negotiated format.
+     * Providers whose BIC is already known are called first; the remaining providers are only called if some
+     * requested BIC has not been found then. Like {@link #handle}, the client can bound the time it waits with a
+     * deadline, and providers that failed or did not answer in time are left out and listed in the
+     * {@code X-Missing-Providers} header.
+     *
+     * @param request  the request object carrying the BICs in the body or as repeated query parameters, and the
+     *                 optional deadline
+     * @param response the response object for setting the content type, or the HTTP status in case of an error
+     *                 or no content
+     * @return the encoded list of found BankModel objects in request order,
+     * or an appropriate JSON message if no results are found or an error occurs
+     */
+    public static Object handleBatch(Request request, Response response) {
+        Set<String> bics;
+        BankSerializer serializer;
+        Deadline deadline;
+        ResponseFormat format = ResponseFormat.negotiate(request, response);
+        String requestId = Tracing.requestId(request);
+        try {
+            PhaseEvent phase = Tracing.begin(requestId, Phase.PARSE);
+            bics = BatchRequest.parseBics(request);
+            // after the body, which reading the query parameters of a form post would consume
+            deadline = Deadline.fromRequest(request);
+            serializer = BankSerializer.forRequest(request, Views.RemoteCall.class);
+            phase.done();
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Invalid batch request: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
+        }
+
+        try {
+            PhaseEvent phase = Tracing.begin(requestId, Phase.REMOTE_FETCH);
+            Set<String> missingProviders = new LinkedHashSet<>();
+            Map<String, BankModel> found = getBanksByBic(bics, requestId, deadline, missingProviders);
+            List<BankModel> bankModels = new ArrayList<>();
+            for (String bic : bics) {
+                BankModel bankModel = found.get(bic);
+                if (bankModel != null)
+                    bankModels.add(bankModel);
+            }
+            recordDemand(bankModels);
+            phase.done(missingProviders.isEmpty() ? null : "missing:" + String.join(",", missingProviders),
+                    bankModels.size(), -1);
+            if (!missingProviders.isEmpty()) {
+                response.header(Constants.HEADER_RESULT_COMPLETE, "false");
+                response.header(Constants.HEADER_MISSING_PROVIDERS, String.join(",", missingProviders));
+            }
+            if (bankModels.isEmpty() && !missingProviders.isEmpty()) {
+                response.status(deadline.isExpired() ? HttpStatus.GATEWAY_TIMEOUT_504 : HttpStatus.BAD_GATEWAY_502);
+                return Constants.MSG_PROVIDERS_UNAVAILABLE;
+            }
+            if (bankModels.isEmpty()) {
+                response.status(HttpStatus.NO_CONTENT_204);
+                return Constants.MSG_NO_RESULTS;
+            }
+            phase = Tracing.begin(requestId, Phase.SERIALIZE);
+            byte[] body = format.encode(serializer, bankModels);
+            phase.done(format.name(), bankModels.size(), body.length);
+            response.type(format.getContentType());
+            return body;
+        } catch (Exception e) {
+            logger.error("Error processing batch request", e);
+            response.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
+            return Constants.MSG_INTERNAL_SERVER;
+        }
+    }
+
+    /**
+     * Streams every remote bank matching the filter parameters as newline-delimited JSON, in configuration order.
+     * The providers are fetched through {@link #fetchAll}, so hosts with a bulk endpoint serve them in one call, in
+     * windows of {@code bankbridge.remote.bulkMaxBanks} providers; a window is written before the next one is
+     * fetched, so memory use does not depend on the number of providers. An interrupted export can be resumed by
+     * passing the last received BIC as the {@code after} parameter; providers up to the one serving that BIC are
+     * skipped without being called. If the provider of the BIC is not known yet, it is looked up first; a BIC no
+     * provider serves is rejected with 400 rather than resuming from nowhere. Every window has
+     * {@code bankbridge.remote.exportFetchMillis} to be fetched; as the stream is under way by then, a provider that
+     * fails or is too slow is logged and skipped.
+     *
+     * @param request  the request object containing filter parameters and the optional BIC to resume after
+     * @param response the response object whose output stream receives the export
+     * @return an empty string, as the export is written directly to the response, or a JSON error message
+     */
+    public static String handleExport(Request request, Response response) {
+        BankQuery query;
+        BankSerializer serializer;
+        try {
+            query = BankQuery.compile(request, statistics);
+            serializer = BankSerializer.forRequest(request, Views.RemoteCall.class);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid export request: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
+        }
+        String afterParam = request.queryParams(Constants.QUERY_PARAM_AFTER);
+        String requestId = Tracing.requestId(request);
+
+        String afterProvider = null;
+        if (StringUtils.isNotBlank(afterParam)) {
+            if (!bicToProvider.containsKey(afterParam)) {
+                Set<String> missingProviders = new LinkedHashSet<>();
+                try {
+                    getBanksByBic(Collections.singleton(afterParam), requestId, Deadline.in(exportFetchMillis),
+                            missingProviders);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    response.status(HttpStatus.SERVICE_UNAVAILABLE_503);
+                    return Constants.MSG_PROVIDERS_UNAVAILABLE;
+                }
+                if (!bicToProvider.containsKey(afterParam) && !missingProviders.isEmpty()) {
+                    logger.warn("Could not look up the provider to resume the export after, missing {}",
+                            missingProviders);
+                    response.status(HttpStatus.BAD_GATEWAY_502);
+                    return Constants.MSG_PROVIDERS_UNAVAILABLE;
+                }
+            }
+            afterProvider = bicToProvider.get(afterParam);
+            if (afterProvider == null || !config.containsKey(afterProvider)) {
+                logger.warn("Invalid export request: no provider serves {}", afterParam);
+                response.status(HttpStatus.BAD_REQUEST_400);
+                return Constants.MSG_BAD_REQUEST;
+            }
+        }
+
+        List<String> providers = new ArrayList<>(config.keySet());
+        if (afterProvider != null)
+            providers = providers.subList(providers.indexOf(afterProvider) + 1, providers.size());
+        PhaseEvent phase = Tracing.begin(requestId, Phase.EXPORT);
+        Set<String> missingProviders = new LinkedHashSet<>();
+        int written = 0;
+        try (NdjsonWriter writer = NdjsonWriter.open(request, response, serializer)) {
+            for (int from = 0; from < providers.size(); from += bulkMaxBanks) {
+                Deadline deadline = Deadline.in(exportFetchMillis);
+                Map<String, Future<BankModel>> fetches = cachedOrFetchAll(
+                        providers.subList(from, Math.min(providers.size(), from + bulkMaxBanks)), requestId, deadline);
+                try {
+                    for (Entry<String, Future<BankModel>> fetch : fetches.entrySet()) {
+                        BankModel bankModel;
+                        try {
+                            bankModel = deadline.await(fetch.getValue());
+                        } catch (TimeoutException | ExecutionException e) {
+                            missingProviders.add(fetch.getKey());
+                            continue;
+                        }
+                        if (bankModel != null && query.matches(bankModel)) {
+                            writer.write(bankModel);
+                            written++;
+                        }
+                    }
+                } finally {
+                    for (Future<BankModel> fetch : fetches.values()) {
+                        fetch.cancel(true);
+                    }
+                }
+            }
+            if (!missingProviders.isEmpty())
+                logger.warn("Export {} skipped the failing providers {}", requestId, missingProviders);
+            phase.done(missingProviders.isEmpty() ? null : "missing:" + String.join(",", missingProviders),
+                    written, -1);
+        } catch (Exception e) {
+            phase.done("aborted", written, -1);
+            // the response is already committed, the client notices the truncated stream and can resume
+            logger.warn("Export aborted: {}", e.getMessage());
+        }
+        return "";
+    }
+
+    /**
+     * Fetches the banks for the given BICs. The providers already known to serve one of the BICs are called first,
+     * concurrently; if some BIC is still not found, all other providers are called concurrently and their banks
+     * are taken in configuration order until every BIC is found.
+     *
+     * @param bics             the BICs to look up
+     * @param requestId        the id of the request, for tracing
+     * @param deadline         the time by which the banks are due
+     * @param missingProviders receives the providers that failed or did not answer before the deadline, unless
+     *                         every BIC was found anyway
+     * @return the fetched banks keyed by BIC, BICs not served by any answering provider are absent
+     * @throws InterruptedException if the request thread was interrupted while waiting for the providers
+     */
+    private static Map<String, BankModel> getBanksByBic(Set<String> bics, String requestId, Deadline deadline,
+                                                        Set<String> missingProviders) throws InterruptedException {
+        Map<String, BankModel> found = new HashMap<>();
+        Set<String> knownProviders = new LinkedHashSet<>();
+        for (String bic : bics) {
+            String provider = bicToProvider.get(bic);
+            if (provider != null && config.containsKey(provider))
+                knownProviders.add(provider);
+        }
+        collectBics(new ArrayList<>(knownProviders), bics, found, requestId, deadline, missingProviders);
+
+        if (!found.keySet().containsAll(bics)) {
+            List<String> otherProviders = new ArrayList<>(config.keySet());
+            otherProviders.removeAll(knownProviders);
+            collectBics(otherProviders, bics, found, requestId, deadline, missingProviders);
+        }
+        if (found.keySet().containsAll(bics))
+            missingProviders.clear();
+        return found;
+    }
+
+    /**
+     * Takes the banks of the providers, in their order, that carry one of the BICs, until every BIC is found.
+     * Fetches that are no longer needed are cancelled.
+     */
+    private static void collectBics(List<String> providers, Set<String> bics, Map<String, BankModel> found,
+                                    String requestId, Deadline deadline, Set<String> missingProviders)
+            throws InterruptedException {
+        if (providers.isEmpty())
+            return;
+        Map<String, Future<BankModel>> fetches = cachedOrFetchAll(providers, requestId, deadline);
+        try {
+            for (Entry<String, Future<BankModel>> fetch : fetches.entrySet()) {
+                if (found.keySet().containsAll(bics))
+                    break;
+                BankModel bankModel;
+                try {
+                    bankModel = deadline.await(fetch.getValue());
+                } catch (TimeoutException | ExecutionException e) {
+                    missingProviders.add(fetch.getKey());
+                    continue;
+                }
+                if (bankModel != null && bics.contains(bankModel.getBic()))
+                    found.put(bankModel.getBic(), bankModel);
+            }
+        } finally {
+            for (Future<BankModel> fetch : fetches.values()) {
+                fetch.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Serves the changes since the version a follower has, as a delta or, for a new follower or one from before a
+     * restart of this instance, as a full snapshot.
+     *
+     * @param request  the request object carrying the follower's epoch and version
+     * @param response the response object for setting the HTTP status in case of an error
+     * @return the snapshot as a JSON string
+     */
+    public static String handleSnapshot(Request request, Response response) {
+        try {
+            String since = request.queryParams(Constants.QUERY_PARAM_SINCE);
+            ReplicationSnapshot snapshot = replicationLog.since(request.queryParams(Constants.QUERY_PARAM_EPOCH),
+                    StringUtils.isNotBlank(since) ? Long.parseLong(since) : 0);
+            return objectMapper.writeValueAsString(snapshot);
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid snapshot request: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
+        } catch (Exception e) {
+            logger.error("Error building snapshot", e);
+            response.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
+            return Constants.MSG_INTERNAL_SERVER;
+        }
+    }
+
+    /**
+     * @return true if this instance is a follower and its leader answered recently
+     */
+    private static boolean isLeaderAvailable() {
+        return follower != null && follower.isLeaderAvailable();
+    }
+
+    /**
+     * @param provider the provider name
+     * @return the cached bank of the provider if caching is enabled or the bank was restored at start, and the bank
+     * is not too old, otherwise null
+     */
+    private static BankModel cachedBank(String provider) {
+        if (refreshScheduler == null && !isLeaderAvailable() && !restoredProviders.contains(provider))
+            return null;
+        Long fetchedAt = lastFetchedAt.get(provider);
+        if (fetchedAt == null || System.nanoTime() - fetchedAt > maxStaleNanos)
+            return null;
+        return lastFetched.get(provider);
+    }
+
+    /**
+     * Starts fetching the banks of the providers that have no usable cached bank, see {@link #fetchAll}.
+     *
+     * @param providers the providers whose banks are wanted
+     * @param requestId the id of the request the calls are made for, for tracing
+     * @param deadline  the deadline of the calls
+     * @return the bank per provider, already done for the cached ones, in the order of the providers
+     */
+    private static Map<String, Future<BankModel>> cachedOrFetchAll(List<String> providers, String requestId,
+                                                                   Deadline deadline) {
+        Map<String, BankModel> cached = new HashMap<>();
+        List<String> uncached = new ArrayList<>();
+        for (String provider : providers) {
+            BankModel bankModel = cachedBank(provider);
+            if (bankModel != null)
+                cached.put(provider, bankModel);
+            else
+                uncached.add(provider);
+        }
+        Map<String, Future<BankModel>> fetched = fetchAll(uncached, requestId, deadline);
+        Map<String, Future<BankModel>> fetches = new LinkedHashMap<>();
+        for (String provider : providers) {
+            Future<BankModel> fetch = fetched.get(provider);
+            fetches.put(provider, fetch != null ? fetch : CompletableFuture.completedFuture(cached.get(provider)));
+        }
+        return fetches;
+    }
+
+    /**
+     * Counts the returned banks as demand for their providers, so popular banks are refreshed more often.
+     *
+     * @param bankModels the banks returned to a client
+     */
+    private static void recordDemand(List<BankModel> bankModels) {
+        if (refreshScheduler == null)
+            return;
+        for (BankModel bankModel : bankModels) {
+            String provider = bicToProvider.get(bankModel.getBic());
+            if (provider != null)
+                refreshScheduler.recordDemand(provider);
+        }
+    }
+
+    /**
+     * Starts fetching the banks of the providers. Providers on a host with a bulk endpoint are fetched together,
+     * in calls of at most {@code bankbridge.remote.bulkMaxBanks} banks, the others one by one. Banks a bulk call
+     * does not return, and all banks of a failed bulk call, are fetched one by one instead, unless the deadline has
+     * passed by then.
+     *
+     * @param providers the providers to fetch
+     * @param requestId the id of the request the calls are made for, for tracing
+     * @param deadline  the deadline of the calls
+     * @return the pending bank per provider, in the order of the providers
+     */
+    private static Map<String, Future<BankModel>> fetchAll(List<String> providers, String requestId,
+                                                           Deadline deadline) {
+        Map<String, Future<BankModel>> fetches = new LinkedHashMap<>();
+        Map<String, Map<String, CompletableFuture<BankModel>>> bulkGroups = new LinkedHashMap<>();
+        for (String provider : providers) {
+            String url = config.get(provider);
+            String host = hostOf(url);
+            if (bulkEndpoints.containsKey(host)) {
+                CompletableFuture<BankModel> fetch = new CompletableFuture<>();
+                bulkGroups.computeIfAbsent(host, key -> new LinkedHashMap<>()).put(provider, fetch);
+                fetches.put(provider, fetch);
+            } else {
+                fetches.put(provider, fetchExecutor.submit(() -> fetchBank(provider, url, requestId, deadline)));
+            }
+        }
+
+        for (Map.Entry<String, Map<String, CompletableFuture<BankModel>>> group : bulkGroups.entrySet()) {
+            String endpoint = bulkEndpoints.get(group.getKey());
+            List<String> groupProviders = new ArrayList<>(group.getValue().keySet());
+            for (int from = 0; from < groupProviders.size(); from += bulkMaxBanks) {
+                Map<String, CompletableFuture<BankModel>> chunk = new LinkedHashMap<>();
+                for (String provider : groupProviders.subList(from,
+                        Math.min(groupProviders.size(), from + bulkMaxBanks)))
+                    chunk.put(provider, group.getValue().get(provider));
+                fetchExecutor.execute(() -> fetchBulk(endpoint, chunk, requestId, deadline));
+            }
+        }
+        return fetches;
     }
 
     /**
-     * Paginates the given list of bank models based on the specified indices.
+     * Fetches the banks of several providers of one host with a single call to its bulk endpoint, and completes
+     * their pending banks. Providers sharing a URL are asked for once.
+     */
+    private static void fetchBulk(String endpoint, Map<String, CompletableFuture<BankModel>> pending,
+                                  String requestId, Deadline deadline) {
+        Map<String, List<String>> providersByPath = new LinkedHashMap<>();
+        for (String provider : pending.keySet())
+            providersByPath.computeIfAbsent(pathOf(config.get(provider)), key -> new ArrayList<>()).add(provider);
+
+        Map<String, BankModel> banks = Collections.emptyMap();
+        try {
+            banks = fetchBulk(endpoint, providersByPath.keySet(), requestId, deadline);
+        } catch (Exception e) {
+            logger.warn("Bulk fetch from {} failed, fetching {} banks one by one: {}", endpoint, pending.size(),
+                    e.getMessage());
+        }
+
+        long now = System.nanoTime();
+        for (Map.Entry<String, List<String>> path : providersByPath.entrySet()) {
+            BankModel bankModel = banks.get(path.getKey());
+            for (String provider : path.getValue()) {
+                CompletableFuture<BankModel> fetch = pending.get(provider);
+                if (bankModel != null) {
+                    store(provider, bankModel, now);
+                    fetch.complete(bankModel);
+                } else if (!fetch.isDone() && deadline.isExpired()) {
+                    // too late to call the providers one by one
+                    fetch.completeExceptionally(new TimeoutException("Deadline passed before fetching " + provider));
+                } else if (!fetch.isDone()) {
+                    fetchExecutor.execute(() -> {
+                        try {
+                            fetch.complete(fetchBank(provider, config.get(provider), requestId, deadline));
+                        } catch (Exception e) {
+                            fetch.completeExceptionally(e);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls a bulk endpoint. The request body is a JSON array of the paths of the wanted single-bank URLs, the
+     * answer a JSON object with the bank of every path the host could serve. The call takes one slot of the host's
+     * limiter and may return up to {@code bankbridge.remote.maxPayloadBytes} per requested bank. A host answering
+     * that it has no such endpoint is no longer asked.
+     *
+     * @return the banks by path
+     * @throws Exception if the call fails or the answer cannot be parsed
+     */
+    private static Map<String, BankModel> fetchBulk(String endpoint, Collection<String> paths, String requestId,
+                                                    Deadline deadline) throws Exception {
+        AdaptiveConcurrencyLimiter limiter = RemoteLimiters.forUrl(endpoint);
+        limiter.acquire(deadline);
+        RemoteFetchEvent event = new RemoteFetchEvent(requestId, "bulk:" + paths.size(), endpoint);
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean cutShort = false;
+        long maxBytes = (long) maxPayloadBytes * paths.size();
+        HttpPost httppost = new HttpPost(endpoint);
+        httppost.setEntity(new ByteArrayEntity(objectMapper.writeValueAsBytes(paths), ContentType.APPLICATION_JSON));
+        if (!deadline.isUnbounded()) {
+            int timeout = deadline.remainingMillisForTimeout();
+            httppost.setConfig(RequestConfig.custom()
+                    .setConnectionRequestTimeout(timeout)
+                    .setConnectTimeout(timeout)
+                    .setSocketTimeout(timeout)
+                    .build());
+        }
+        try (CloseableHttpResponse response = httpClient.execute(httppost)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            event.setStatusCode(statusCode);
+            // a host answering a client error is healthy, a body it cannot deliver intact is not
+            boolean answered = statusCode < HttpStatus.INTERNAL_SERVER_ERROR_500;
+            HttpEntity entity = response.getEntity();
+            if (statusCode == HttpStatus.NOT_FOUND_404 || statusCode == HttpStatus.METHOD_NOT_ALLOWED_405
+                    || statusCode == HttpStatus.NOT_IMPLEMENTED_501) {
+                EntityUtils.consume(entity);
+                success = answered;
+                bulkEndpoints.remove(hostOf(endpoint));
+                throw new IOException("No bulk endpoint, status " + statusCode);
+            }
+            if (entity != null && entity.getContentLength() > maxBytes)
+                throw new PayloadTooLargeException(maxBytes);
+            if (!isSuccessfulResponse(statusCode)) {
+                EntityUtils.consume(entity);
+                success = answered;
+                throw new IOException("Bulk endpoint answered " + statusCode);
+            }
+            SizeLimitedInputStream in = new SizeLimitedInputStream(entity.getContent(), maxBytes);
+            Map<String, BankModel> banks;
+            try {
+                banks = bulkReader.readValue((InputStream) in);
+            } catch (IOException e) {
+                httppost.abort();
+                throw e;
+            }
+            event.setBytes(in.getCount());
+            in.close();
+            success = true;
+            return banks != null ? banks : Collections.emptyMap();
+        } catch (Exception e) {
+            cutShort = isCutShortByCaller(e, deadline);
+            throw e;
+        } finally {
+            release(limiter, start, success, cutShort);
+            event.done(success);
+        }
+    }
+
+    /**
+     * Tells failures the caller caused, by its deadline running out or by cancelling the fetch, from failures of the
+     * provider. With a deadline, every timeout of the call is derived from it.
+     */
+    private static boolean isCutShortByCaller(Exception e, Deadline deadline) {
+        return Thread.currentThread().isInterrupted() || deadline.isExpired()
+                || (!deadline.isUnbounded() && e instanceof InterruptedIOException);
+    }
+
+    /**
+     * Frees the limiter slot of a call. A call cut short by its caller says nothing about the host, so it is not
+     * counted as a sample; otherwise any client could shrink the limit of every host by sending tiny deadlines.
+     */
+    private static void release(AdaptiveConcurrencyLimiter limiter, long start, boolean success, boolean cutShort) {
+        if (cutShort)
+            limiter.releaseWithoutSample();
+        else
+            limiter.release(System.nanoTime() - start, success);
+    }
+
+    /**
+     * @return the host and port of the URL, the key of the host's limiter and bulk endpoint
+     */
+    private static String hostOf(String url) {
+        URI uri = URI.create(url);
+        return uri.getHost() + ":" + uri.getPort();
+    }
+
+    /**
+     * @return the path and query of the URL, by which a bulk endpoint knows the bank
+     */
+    private static String pathOf(String url) {
+        URI uri = URI.create(url);
+        return uri.getRawQuery() != null ? uri.getRawPath() + "?" + uri.getRawQuery() : uri.getRawPath();
+    }
+
+    /**
+     * Fetches the bank served by a single remote provider and records which provider serves its BIC.
+     * The call is recorded as a {@link RemoteFetchEvent} once a slot of the host's limiter has been taken.
+     * The body is parsed while it is read from the connection, without being buffered. A body that announces or
+     * turns out to be larger than {@code bankbridge.remote.maxPayloadBytes}, or that is not a single valid bank,
+     * fails the fetch at once and the connection is closed instead of drained.
      *
-     * @param bankModels the full list of bank models to paginate
-     * @param fromIndex  the starting index of the sublist
-     * @param toIndex    the ending index of the sublist
-     * @return a sublist of BankModel objects based on the specified indices, or an empty list if the indices are out of bounds
+     * @param provider  the provider name as configured in banks-v2.json
+     * @param url       the remote URL of the provider
+     * @param requestId the id of the request the call is made for, for tracing
+     * @param deadline  the deadline applied to waiting for a slot, connecting and reading
+     * @return the fetched bank, or null if the provider did not answer with a successful status
+     * @throws Exception if there is an error during the process of fetching or parsing bank data
      */
-    private static List<BankModel> paginate(List<BankModel> bankModels, int fromIndex, int toIndex) {
-        int total = bankModels.size();
-        // TODO Improve the logic to be more readable, clear and align with logic of pagination across application
-        if (fromIndex >= 0) {
-            toIndex = Math.min(toIndex, total);
-            return fromIndex < total ? bankModels.subList(fromIndex, toIndex) : new ArrayList<BankModel>();
+    private static BankModel fetchBank(String provider, String url, String requestId, Deadline deadline)
+            throws Exception {
+        // TODO Improve the logic to have a retry attempt on failures
+        AdaptiveConcurrencyLimiter limiter = RemoteLimiters.forUrl(url);
+        limiter.acquire(deadline);
+        RemoteFetchEvent event = new RemoteFetchEvent(requestId, provider, url);
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean cutShort = false;
+        HttpGet httpget = new HttpGet(url);
+        if (!deadline.isUnbounded()) {
+            int timeout = deadline.remainingMillisForTimeout();
+            httpget.setConfig(RequestConfig.custom()
+                    .setConnectionRequestTimeout(timeout)
+                    .setConnectTimeout(timeout)
+                    .setSocketTimeout(timeout)
+                    .build());
+        }
+        try (CloseableHttpResponse response = httpClient.execute(httpget)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            event.setStatusCode(statusCode);
+            // a host answering a client error is healthy, a body it cannot deliver intact is not
+            boolean answered = statusCode < HttpStatus.INTERNAL_SERVER_ERROR_500;
+            HttpEntity entity = response.getEntity();
+            if (entity != null && entity.getContentLength() > maxPayloadBytes)
+                throw new PayloadTooLargeException(maxPayloadBytes);
+            if (!isSuccessfulResponse(statusCode)) {
+                EntityUtils.consume(entity);
+                success = answered;
+                return null;
+            }
+            SizeLimitedInputStream in = new SizeLimitedInputStream(entity.getContent(), maxPayloadBytes);
+            BankModel bankModel;
+            try {
+                bankModel = bankReader.readValue((InputStream) in);
+            } catch (IOException e) {
+                // drop the connection rather than draining a body that is oversized or not understood
+                httpget.abort();
+                throw e;
+            }
+            event.setBytes(in.getCount());
+            // the parser has read up to the end of the body, so the connection goes back to the pool
+            in.close();
+            success = true;
+            store(provider, bankModel, System.nanoTime());
+            return bankModel;
+        } catch (Exception e) {
+            if (isCutShortByCaller(e, deadline)) {
+                cutShort = true;
+                logger.warn("Fetch from {} cut short by the caller: {}", url, e.getMessage());
+            } else {
+                logger.error("Error fetching bank data from {}", url, e);
+            }
+            throw e;
+        } finally {
+            release(limiter, start, success, cutShort);
+            event.done(success);
         }
-        return bankModels;
+    }
+
+    /**
+     * Keeps a bank fetched from a provider, here or by the leader, and records which provider serves its BIC.
+     *
+     * @param provider       the provider name
+     * @param bankModel      the bank the provider served
+     * @param fetchedAtNanos when the bank was fetched
+     */
+    private static void store(String provider, BankModel bankModel, long fetchedAtNanos) {
+        if (bankModel.getBic() != null)
+            bicToProvider.put(bankModel.getBic(), provider);
+        statistics.replace(lastFetched.put(provider, bankModel), bankModel);
+        lastFetchedAt.put(provider, fetchedAtNanos);
+        replicationLog.record(provider, bankModel, fetchedAtNanos);
+        restoredProviders.remove(provider);
+        if (snapshotFile != null)
+            snapshotFile.markDirty();
+        if (refreshScheduler != null)
+            refreshScheduler.recordFetched(provider);
+    }
+
+    /**
+     * Checks if the given HTTP status code indicates a successful response.
+     *
+     * @param statusCode the HTTP status code to check
+     * @return true if the status code is 200, 201, or 202, false otherwise
+     */
+    private static boolean isSuccessfulResponse(int statusCode) {
+        return statusCode == HttpStatus.OK_200 || statusCode == HttpStatus.CREATED_201 || statusCode == HttpStatus.ACCEPTED_202;
     }
 }
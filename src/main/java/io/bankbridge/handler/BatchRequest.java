@@ -0,0 +1,59 @@
+package io.bankbridge.handler;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.bankbridge.model.Constants;
+import spark.Request;
+import spark.utils.StringUtils;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parses the list of BICs requested through the batch endpoints of both API versions.
+ */
+final class BatchRequest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BatchRequest() {
+    }
+
+    /**
+     * Reads the requested BICs either from a JSON array in the POST body or from repeated {@code bic} query parameters.
+     * Duplicates and blank values are dropped, the order of first appearance is kept.
+     *
+     * @param request the request object carrying the BICs
+     * @return the requested BICs in request order
+     * @throws IOException              if the POST body is not a JSON array of strings
+     * @throws IllegalArgumentException if the POST body is JSON null, or more than {@link Constants#MAX_BATCH_SIZE}
+     *                                  BICs are requested
+     */
+    static Set<String> parseBics(Request request) throws IOException {
+        Set<String> bics = new LinkedHashSet<>();
+        if (StringUtils.isNotBlank(request.body())) {
+            List<String> bodyBics = objectMapper.readValue(request.body(), new TypeReference<List<String>>() {
+            });
+            if (bodyBics == null)
+                throw new IllegalArgumentException("The body must be a JSON array of BICs");
+            addAll(bics, bodyBics.toArray(new String[0]));
+        }
+        addAll(bics, request.queryParamsValues(Constants.QUERY_PARAM_BIC));
+
+        if (bics.size() > Constants.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("At most " + Constants.MAX_BATCH_SIZE + " BICs can be requested at once");
+        }
+        return bics;
+    }
+
+    private static void addAll(Set<String> bics, String[] values) {
+        if (values == null)
+            return;
+        for (String value : values) {
+            if (StringUtils.isNotBlank(value))
+                bics.add(value.trim());
+        }
+    }
+}
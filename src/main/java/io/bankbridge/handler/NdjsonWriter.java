@@ -0,0 +1,109 @@
+package io.bankbridge.handler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.Constants;
+import io.bankbridge.serialization.BankSerializer;
+import io.bankbridge.serialization.ResponseFormat;
+import spark.Request;
+import spark.Response;
+import spark.utils.StringUtils;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams bank models to the client as newline-delimited JSON, one bank per line.
+ * Each bank is written straight to the servlet output stream, so memory use does not grow with the export size,
+ * and the blocking servlet writes throttle the export to the pace of the client.
+ */
+final class NdjsonWriter implements Closeable {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final OutputStream out;
+    private final JsonGenerator generator;
+    private final BankSerializer serializer;
+    private int pending;
+
+    private NdjsonWriter(OutputStream out, BankSerializer serializer) throws IOException {
+        this.out = out;
+        this.generator = jsonFactory.createGenerator(out);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // lines are separated explicitly
+        this.generator.setRootValueSeparator(null);
+        this.serializer = serializer;
+    }
+
+    /**
+     * Prepares the response for an NDJSON export, compressing it with gzip when the client accepts it.
+     *
+     * @param request    the request object, used to check the Accept-Encoding header
+     * @param response   the response object whose raw output stream receives the export
+     * @param serializer the serializer writing every bank
+     * @return a writer bound to the response output stream
+     * @throws IOException if the output stream cannot be opened
+     */
+    static NdjsonWriter open(Request request, Response response, BankSerializer serializer) throws IOException {
+        HttpServletResponse raw = response.raw();
+        raw.setContentType(Constants.CONTENT_TYPE_NDJSON);
+
+        OutputStream out = raw.getOutputStream();
+        // compressed or not, the body depends on the header, which shared caches have to know
+        raw.addHeader(Constants.HEADER_VARY, "Accept-Encoding");
+        if (acceptsGzip(request.headers("Accept-Encoding"))) {
+            raw.setHeader("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(out, true);
+        }
+        return new NdjsonWriter(out, serializer);
+    }
+
+    /**
+     * @return true if the Accept-Encoding header gives gzip, or else {@code *}, a quality above 0
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (StringUtils.isBlank(acceptEncoding))
+            return false;
+        double gzipQuality = -1;
+        double anyQuality = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name))
+                gzipQuality = ResponseFormat.quality(parts);
+            else if ("*".equals(name))
+                anyQuality = ResponseFormat.quality(parts);
+        }
+        return (gzipQuality >= 0 ? gzipQuality : anyQuality) > 0;
+    }
+
+    /**
+     * Writes a single bank as one line, flushing to the client every {@link Constants#EXPORT_FLUSH_INTERVAL} banks.
+     *
+     * @param bankModel the bank to write
+     * @throws IOException if the client went away or the bank cannot be serialized
+     */
+    void write(BankModel bankModel) throws IOException {
+        serializer.write(generator, bankModel);
+        generator.writeRaw('\n');
+        if (++pending >= Constants.EXPORT_FLUSH_INTERVAL) {
+            generator.flush();
+            pending = 0;
+        }
+    }
+
+    /**
+     * Flushes the remaining banks and finishes the response, which also commits it so Spark does not write a body.
+     *
+     * @throws IOException if the client went away
+     */
+    @Override
+    public void close() throws IOException {
+        generator.close();
+        out.close();
+    }
+}
@@ -0,0 +1,375 @@
+package io.bankbridge.handler;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.bankbridge.Settings;
+import io.bankbridge.admission.AdmissionControl;
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.Constants;
+import io.bankbridge.model.Views;
+import io.bankbridge.query.BankQuery;
+import io.bankbridge.query.FieldStatistics;
+import io.bankbridge.query.SortSpec;
+import io.bankbridge.remote.Deadline;
+import io.bankbridge.serialization.BankSerializer;
+import io.bankbridge.serialization.ResponseFormat;
+import io.bankbridge.tracing.Phase;
+import io.bankbridge.tracing.PhaseEvent;
+import io.bankbridge.tracing.Tracing;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+import spark.utils.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Routes v1 queries over instances that each hold the banks of some countries (see {@code bankbridge.shard.countries}).
+ * Enabled with {@code bankbridge.router.shards}, e.g. {@code SE,NO=http://localhost:8082;*=http://localhost:8083},
+ * where {@code *} names the shard of all countries not listed. That shard either lists the countries it holds as well
+ * or excludes those of the other shards with {@code bankbridge.shard.excludedCountries}, e.g. {@code SE,NO}.
+ * <ul>
+ * <li>Queries with a country code are forwarded to the shard owning the country and answered with its response.</li>
+ * <li>Other queries are sent to all shards at once, each asked for the first {@code offset + limit} banks of the
+ * query; the results are merged in the requested order, or concatenated in shard order when unsorted, and the
+ * requested page is cut from the merged list.</li>
+ * </ul>
+ * Shards are asked for all fields in Smile, so the merge can compare any sort field and the projection and format of
+ * the client are applied once, here. Shards that fail, or do not answer within the deadline of the client or else
+ * {@code bankbridge.router.timeoutMillis}, are left out and listed in the {@code X-Missing-Shards} header, together
+ * with {@code X-Result-Complete: false}. Shard calls carry the API key and address of the client, so the shards rate
+ * limit each client rather than the router, provided they list the router in {@code bankbridge.admission.trustedProxies}.
+ * <p>
+ * A router holds no v1 banks of its own. Batches, exports and changes are not routed and answered with 501; clients
+ * send them to the shards directly.
+ */
+public class ShardRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardRouter.class);
+
+    private static final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    private static final String OTHER_COUNTRIES = "*";
+
+    /**
+     * Parameters the router sets itself on scattered queries.
+     */
+    private static final Set<String> SHARD_CONTROLLED_PARAMS = new HashSet<>(Arrays.asList(
+            Constants.QUERY_PARAM_PAGE, Constants.QUERY_PARAM_PAGESIZE, Constants.QUERY_PARAM_FIELDS));
+
+    /**
+     * Shard base URL per country code, in configuration order.
+     */
+    private static final Map<String, String> shardByCountry = new LinkedHashMap<>();
+    private static final Set<String> shards = new LinkedHashSet<>();
+    private static String otherCountriesShard;
+
+    /**
+     * The router holds no banks, the statistics only serve the parsing of queries.
+     */
+    private static final FieldStatistics statistics = new FieldStatistics();
+
+    private static volatile boolean enabled;
+    private static CloseableHttpClient httpClient;
+    private static ExecutorService scatterExecutor;
+    private static int timeoutMillis;
+
+    /**
+     * Reads the shard map.
+     *
+     * @return true if this instance is a router
+     */
+    public static boolean init() {
+        String shardMap = Settings.getString("router.shards", null);
+        if (StringUtils.isBlank(shardMap))
+            return false;
+
+        for (String shard : shardMap.split(";")) {
+            int separator = shard.indexOf('=');
+            if (separator < 0)
+                throw new IllegalArgumentException("Shard must be given as countries=url: " + shard);
+            String url = shard.substring(separator + 1).trim().replaceAll("/+$", "");
+            shards.add(url);
+            for (String country : shard.substring(0, separator).split(",")) {
+                if (OTHER_COUNTRIES.equals(country.trim()))
+                    otherCountriesShard = url;
+                else
+                    shardByCountry.put(country.trim().toUpperCase(Locale.ROOT), url);
+            }
+        }
+
+        timeoutMillis = Settings.getInt("router.timeoutMillis", Constants.DEFAULT_ROUTER_TIMEOUT_MILLIS);
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(Settings.getInt("remote.maxLimit", Constants.DEFAULT_REMOTE_MAX_LIMIT));
+        httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+        scatterExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-scatter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Routing v1 queries over {} shards", shards.size());
+        enabled = true;
+        return true;
+    }
+
+    /**
+     * @return true if this instance is a router, which holds no v1 banks itself
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Answers the v1 routes a router does not serve, which would otherwise act on banks it does not hold.
+     *
+     * @param request  the request object
+     * @param response the response object for setting the HTTP status
+     * @return a JSON error message
+     */
+    public static String handleNotRouted(Request request, Response response) {
+        response.status(HttpStatus.NOT_IMPLEMENTED_501);
+        return Constants.MSG_NOT_ROUTED;
+    }
+
+    /**
+     * Answers a v1 bank query from the shards.
+     *
+     * @param request  the request object containing filter, sort and pagination parameters
+     * @param response the response object for setting the content type, or the HTTP status in case of an error
+     * @return the encoded page of banks, or a JSON error message
+     */
+    public static Object handle(Request request, Response response) {
+        String requestId = Tracing.requestId(request);
+        BankQuery query;
+        BankSerializer serializer;
+        ResponseFormat format;
+        Deadline deadline;
+        try {
+            deadline = Deadline.fromRequest(request);
+            if (deadline.isUnbounded())
+                deadline = Deadline.in(timeoutMillis);
+            query = BankQuery.compile(request, statistics);
+            serializer = BankSerializer.forRequest(request, Views.Cache.class);
+            format = ResponseFormat.negotiate(request, response);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid request: {}", e.getMessage());
+            response.status(HttpStatus.BAD_REQUEST_400);
+            return Constants.MSG_BAD_REQUEST;
+        }
+
+        try {
+            String countryCode = request.queryParams(Constants.QUERY_PARAM_COUNTRYCODE);
+            if (StringUtils.isNotBlank(countryCode)) {
+                String shard = shardByCountry.getOrDefault(countryCode.trim().toUpperCase(Locale.ROOT),
+                        otherCountriesShard);
+                if (shard == null)
+                    return format.encode(serializer, Collections.emptyList());
+                try {
+                    return forward(shard, request, response, deadline);
+                } catch (IOException e) {
+                    logger.warn("Shard {} failed: {}", shard, e.getMessage());
+                    response.status(HttpStatus.BAD_GATEWAY_502);
+                    response.header(Constants.HEADER_MISSING_SHARDS, shard);
+                    return Constants.MSG_PROVIDERS_UNAVAILABLE;
+                }
+            }
+
+            PhaseEvent phase = Tracing.begin(requestId, Phase.REMOTE_FETCH);
+            String shardQuery = shardQuery(request, query);
+            List<String> shardUrls = new ArrayList<>(shards);
+            List<Future<List<BankModel>>> fetches = new ArrayList<>();
+            for (String shard : shardUrls) {
+                HttpGet httpget = shardRequest(shard + "/v1/banks/all" + shardQuery, request, deadline);
+                httpget.setHeader(Constants.HEADER_ACCEPT, ResponseFormat.SMILE.getContentType());
+                fetches.add(scatterExecutor.submit(() -> fetchShard(httpget)));
+            }
+
+            List<List<BankModel>> results = new ArrayList<>();
+            Set<String> missingShards = new LinkedHashSet<>();
+            for (int i = 0; i < fetches.size(); i++) {
+                try {
+                    results.add(deadline.await(fetches.get(i)));
+                } catch (ExecutionException e) {
+                    logger.warn("Shard {} failed: {}", shardUrls.get(i), e.getCause().getMessage());
+                    missingShards.add(shardUrls.get(i));
+                } catch (TimeoutException e) {
+                    logger.warn("Shard {} did not answer in time", shardUrls.get(i));
+                    fetches.get(i).cancel(true);
+                    missingShards.add(shardUrls.get(i));
+                }
+            }
+            List<BankModel> page = page(merge(results, query.getSort()), query);
+            phase.done(missingShards.isEmpty() ? null : "missing:" + String.join(",", missingShards),
+                    page.size(), -1);
+
+            if (!missingShards.isEmpty()) {
+                if (results.isEmpty()) {
+                    response.status(HttpStatus.BAD_GATEWAY_502);
+                    return Constants.MSG_PROVIDERS_UNAVAILABLE;
+                }
+                response.header(Constants.HEADER_RESULT_COMPLETE, "false");
+                response.header(Constants.HEADER_MISSING_SHARDS, String.join(",", missingShards));
+            }
+
+            phase = Tracing.begin(requestId, Phase.SERIALIZE);
+            byte[] body = format.encode(serializer, page);
+            phase.done(format.name(), page.size(), body.length);
+            response.type(format.getContentType());
+            return body;
+        } catch (Exception e) {
+            logger.error("Error routing request", e);
+            response.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
+            return Constants.MSG_INTERNAL_SERVER;
+        }
+    }
+
+    /**
+     * Creates a call to a shard on behalf of the client, bounded by its deadline.
+     */
+    private static HttpGet shardRequest(String url, Request request, Deadline deadline) {
+        HttpGet httpget = new HttpGet(url);
+        int timeout = deadline.remainingMillisForTimeout();
+        httpget.setConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout)
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .build());
+        httpget.setHeader(Constants.HEADER_REQUEST_ID, Tracing.requestId(request));
+        if (StringUtils.isNotBlank(request.headers(Constants.HEADER_API_KEY)))
+            httpget.setHeader(Constants.HEADER_API_KEY, request.headers(Constants.HEADER_API_KEY));
+        httpget.setHeader(Constants.HEADER_FORWARDED_FOR, AdmissionControl.clientIp(request));
+        return httpget;
+    }
+
+    /**
+     * Passes the request on to one shard and its answer back unchanged.
+     */
+    private static byte[] forward(String shard, Request request, Response response, Deadline deadline)
+            throws IOException {
+        String url = shard + request.pathInfo() + (request.queryString() != null ? "?" + request.queryString() : "");
+        HttpGet httpget = shardRequest(url, request, deadline);
+        if (request.headers(Constants.HEADER_ACCEPT) != null)
+            httpget.setHeader(Constants.HEADER_ACCEPT, request.headers(Constants.HEADER_ACCEPT));
+        try (CloseableHttpResponse shardResponse = httpClient.execute(httpget)) {
+            response.status(shardResponse.getStatusLine().getStatusCode());
+            HttpEntity entity = shardResponse.getEntity();
+            if (entity == null)
+                return new byte[0];
+            ContentType contentType = ContentType.get(entity);
+            if (contentType != null)
+                response.type(contentType.toString());
+            return EntityUtils.toByteArray(entity);
+        }
+    }
+
+    /**
+     * @return the query string asking a shard for every bank the merged page can contain
+     */
+    private static String shardQuery(Request request, BankQuery query) throws UnsupportedEncodingException {
+        StringBuilder shardQuery = new StringBuilder();
+        for (String param : request.queryParams()) {
+            if (SHARD_CONTROLLED_PARAMS.contains(param))
+                continue;
+            for (String value : request.queryParamsValues(param))
+                appendParam(shardQuery, param, value);
+        }
+        if (query.isPaged()) {
+            appendParam(shardQuery, Constants.QUERY_PARAM_PAGE, "1");
+            appendParam(shardQuery, Constants.QUERY_PARAM_PAGESIZE,
+                    String.valueOf((long) query.getOffset() + query.getLimit()));
+        }
+        return shardQuery.toString();
+    }
+
+    private static void appendParam(StringBuilder query, String name, String value)
+            throws UnsupportedEncodingException {
+        query.append(query.length() == 0 ? '?' : '&').append(URLEncoder.encode(name, "UTF-8")).append('=')
+                .append(URLEncoder.encode(value, "UTF-8"));
+    }
+
+    private static List<BankModel> fetchShard(HttpGet httpget) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(httpget)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != HttpStatus.OK_200) {
+                EntityUtils.consume(response.getEntity());
+                throw new IOException("Shard answered " + statusCode);
+            }
+            try (InputStream in = response.getEntity().getContent()) {
+                return smileMapper.readValue(in, new TypeReference<List<BankModel>>() {
+                });
+            }
+        }
+    }
+
+    /**
+     * Merges the per-shard results, each already in the requested order, with a k-way merge. Banks that compare
+     * equal keep the shard order. Without a sort the results are concatenated in shard order.
+     *
+     * @param results  the banks of every shard that answered, in shard order
+     * @param sortSpec the requested ordering, null if unsorted
+     * @return all banks in the requested order
+     */
+    private static List<BankModel> merge(List<List<BankModel>> results, SortSpec sortSpec) {
+        List<BankModel> merged = new ArrayList<>();
+        if (sortSpec == null) {
+            results.forEach(merged::addAll);
+            return merged;
+        }
+
+        Comparator<BankModel> bankOrder = sortSpec.getComparator();
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            int c = bankOrder.compare(results.get(a[0]).get(a[1]), results.get(b[0]).get(b[1]));
+            return c != 0 ? c : Integer.compare(a[0], b[0]);
+        });
+        for (int shard = 0; shard < results.size(); shard++) {
+            if (!results.get(shard).isEmpty())
+                heads.add(new int[]{shard, 0});
+        }
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<BankModel> shardResult = results.get(head[0]);
+            merged.add(shardResult.get(head[1]));
+            if (++head[1] < shardResult.size())
+                heads.add(head);
+        }
+        return merged;
+    }
+
+    private static List<BankModel> page(List<BankModel> merged, BankQuery query) {
+        int from = Math.min(query.getOffset(), merged.size());
+        int to = (int) Math.min(merged.size(), (long) from + query.getLimit());
+        return merged.subList(from, to);
+    }
+}
@@ -0,0 +1,172 @@
+package io.bankbridge.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.bankbridge.Settings;
+import io.bankbridge.Startup;
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.Constants;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Warms the instance up after the routes are registered, and reports readiness until then, so a load balancer only
+ * sends traffic once the JIT has compiled the hot paths and the caches are filled.
+ * <ul>
+ * <li>Every provider is fetched once, which opens pooled connections to the remote hosts. When banks were restored
+ * from the snapshot file, they already answer v2 queries, so this happens only once the instance is ready, and an
+ * unreachable provider does not hold the restored banks back.</li>
+ * <li>A synthetic mix of queries, built from the banks at hand (every country, a sample of BICs, every product
+ * and auth value, sorted and paged variants, a projection), is replayed through the v1 and v2 query paths in all
+ * response formats, {@code bankbridge.warmup.iterations} and {@code bankbridge.warmup.remoteIterations} times. The
+ * v2 replays read the banks fetched in the first step rather than calling the providers again. A router, which
+ * holds no v1 banks, skips the v1 part.</li>
+ * <li>The v1 response cache is filled with the answers of the mix.</li>
+ * </ul>
+ * Warm-up is best effort: a failed step is logged and the instance becomes ready anyway.
+ */
+public class Warmup {
+
+    private static final Logger logger = LoggerFactory.getLogger(Warmup.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final int SAMPLED_VALUES = 8;
+
+    private static volatile boolean ready;
+    private static volatile long warmupMillis = -1;
+
+    /**
+     * Starts the warm-up in the background.
+     */
+    public static void start() {
+        Thread thread = new Thread(Warmup::run, "warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void run() {
+        long start = System.nanoTime();
+        int deadlineMillis = Settings.getInt("warmup.deadlineMillis", Constants.DEFAULT_WARMUP_DEADLINE_MILLIS);
+        boolean restored = BanksRemoteCalls.getRestoredBanks() > 0;
+        try {
+            int connected = restored ? 0 : BanksRemoteCalls.preconnect(deadlineMillis);
+            // a router holds no v1 banks, its v1 queries go to the shards
+            int v1Queries = ShardRouter.isEnabled() ? 0 : BanksCacheBased.warmUp(queryMix(BanksCacheBased.banks()),
+                    Settings.getInt("warmup.iterations", Constants.DEFAULT_WARMUP_ITERATIONS));
+            int v2Queries = 0;
+            List<BankModel> remoteBanks = BanksRemoteCalls.banks();
+            if (!remoteBanks.isEmpty()) {
+                v2Queries = BanksRemoteCalls.warmUp(queryMix(remoteBanks), Settings.getInt("warmup.remoteIterations",
+                        Constants.DEFAULT_WARMUP_REMOTE_ITERATIONS));
+            }
+            logger.info("Warmed up with {} v1 and {} v2 queries, {} providers connected", v1Queries, v2Queries,
+                    connected);
+        } catch (Exception e) {
+            logger.warn("Warm-up failed: {}", e.getMessage());
+        } finally {
+            warmupMillis = (System.nanoTime() - start) / 1_000_000;
+            ready = true;
+        }
+        if (restored) {
+            try {
+                logger.info("Fetched {} providers after restoring from the snapshot file",
+                        BanksRemoteCalls.preconnect(deadlineMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Builds the synthetic queries from the values found in the banks.
+     *
+     * @param banks the banks to take countries, BICs, products and auth values from
+     * @return the query parameters of every query
+     */
+    static List<Map<String, String>> queryMix(List<BankModel> banks) {
+        Set<String> countries = new LinkedHashSet<>();
+        Set<String> bics = new LinkedHashSet<>();
+        Set<String> products = new LinkedHashSet<>();
+        Set<String> auths = new LinkedHashSet<>();
+        for (BankModel bankModel : banks) {
+            addSample(countries, bankModel.getCountryCode());
+            addSample(bics, bankModel.getBic());
+            addSample(auths, bankModel.getAuth());
+            if (bankModel.getProducts() != null) {
+                for (Object product : bankModel.getProducts())
+                    addSample(products, String.valueOf(product));
+            }
+        }
+
+        List<Map<String, String>> queries = new ArrayList<>();
+        queries.add(query());
+        queries.add(query(Constants.QUERY_PARAM_PAGE, "2"));
+        queries.add(query(Constants.QUERY_PARAM_SORT, "name", Constants.QUERY_PARAM_PAGE, "1",
+                Constants.QUERY_PARAM_PAGESIZE, "10"));
+        queries.add(query(Constants.QUERY_PARAM_SORT, "-countryCode,bic", Constants.QUERY_PARAM_PAGE, "2"));
+        queries.add(query(Constants.QUERY_PARAM_FIELDS, "bic,name"));
+        for (String country : countries) {
+            queries.add(query(Constants.QUERY_PARAM_COUNTRYCODE, country));
+            queries.add(query(Constants.QUERY_PARAM_COUNTRYCODE, country, Constants.QUERY_PARAM_SORT, "name",
+                    Constants.QUERY_PARAM_FIELDS, "bic,name"));
+        }
+        for (String bic : bics)
+            queries.add(query(Constants.QUERY_PARAM_BIC, bic));
+        for (String product : products)
+            queries.add(query(Constants.QUERY_PARAM_PRODUCT, product));
+        for (String auth : auths)
+            queries.add(query(Constants.QUERY_PARAM_AUTH, auth));
+        return queries;
+    }
+
+    private static void addSample(Set<String> values, String value) {
+        if (value != null && values.size() < SAMPLED_VALUES)
+            values.add(value);
+    }
+
+    private static Map<String, String> query(String... params) {
+        Map<String, String> query = new LinkedHashMap<>();
+        for (int i = 0; i < params.length; i += 2)
+            query.put(params[i], params[i + 1]);
+        return query;
+    }
+
+    /**
+     * Reports whether the warm-up is done, for load balancer health checks, together with the startup timings of
+     * {@link Startup} and the number of remote banks restored from the snapshot file.
+     *
+     * @param request  the request object
+     * @param response the response object for setting the HTTP status while warming up
+     * @return a JSON object with the readiness and the startup figures
+     */
+    public static String handleReady(Request request, Response response) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("ready", ready);
+        if (ready)
+            status.put("warmupMillis", warmupMillis);
+        else
+            response.status(HttpStatus.SERVICE_UNAVAILABLE_503);
+        status.put("initMillis", Startup.getInitializedMillis());
+        status.put("firstGoodV1ResponseMillis", Startup.getFirstGoodV1ResponseMillis());
+        status.put("firstGoodV2ResponseMillis", Startup.getFirstGoodV2ResponseMillis());
+        status.put("restoredBanks", BanksRemoteCalls.getRestoredBanks());
+        try {
+            return objectMapper.writeValueAsString(status);
+        } catch (JsonProcessingException e) {
+            logger.error("Error reporting readiness", e);
+            response.status(HttpStatus.INTERNAL_SERVER_ERROR_500);
+            return Constants.MSG_INTERNAL_SERVER;
+        }
+    }
+}
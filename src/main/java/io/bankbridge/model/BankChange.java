@@ -0,0 +1,41 @@
+package io.bankbridge.model;
+
+/**
+ * One entry of a change log applied to the cached banks: an upsert of a bank or the deletion of a BIC.
+ */
+public class BankChange {
+
+	public static final String OP_UPSERT = "upsert";
+
+	public static final String OP_DELETE = "delete";
+
+	private String op;
+
+	private String bic;
+
+	private BankModel bank;
+
+	public String getOp() {
+		return op;
+	}
+
+	public void setOp(String op) {
+		this.op = op;
+	}
+
+	public String getBic() {
+		return bic;
+	}
+
+	public void setBic(String bic) {
+		this.bic = bic;
+	}
+
+	public BankModel getBank() {
+		return bank;
+	}
+
+	public void setBank(BankModel bank) {
+		this.bank = bank;
+	}
+}
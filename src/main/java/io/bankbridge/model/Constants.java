@@ -3,9 +3,101 @@ package io.bankbridge.model;
 public final class Constants {
 
 	public static final String GET = "GET";
+
+	public static final String POST = "POST";
+
+	public static final String PUT = "PUT";
+
+	public static final String DELETE = "DELETE";
 	
 	public static final int DEFAULT_PAGE_SIZE = 5;
+
+	public static final int MAX_BATCH_SIZE = 100;
+
+	public static final int EXPORT_FLUSH_INTERVAL = 100;
+
+	public static final int DEFAULT_RESPONSE_CACHE_ENTRIES = 1000;
+
+	public static final int DEFAULT_MAX_BANKS = 10000;
+
+	public static final int MAX_CHANGES_PER_REQUEST = 1000;
+
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 200;
+
+	public static final int DEFAULT_RATE_LIMIT_MAX_CLIENTS = 10000;
+
+	public static final int DEFAULT_RATE_LIMIT_BURST = 200;
+
+	public static final int DEFAULT_RATE_LIMIT_PER_SECOND = 100;
+
+	public static final int DEFAULT_REMOTE_INITIAL_LIMIT = 4;
+
+	public static final int DEFAULT_REMOTE_MAX_LIMIT = 64;
+
+	public static final int DEFAULT_REMOTE_MAX_QUEUED = 100;
+
+	public static final int DEFAULT_REMOTE_MAX_WAIT_MILLIS = 1000;
+
+	public static final int DEFAULT_REMOTE_FETCH_THREADS = 32;
+
+	public static final int DEFAULT_REMOTE_MAX_PAYLOAD_BYTES = 64 * 1024;
+
+	public static final int DEFAULT_REMOTE_BULK_MAX_BANKS = 500;
+
+	public static final int DEFAULT_ROUTER_TIMEOUT_MILLIS = 5000;
+
+	public static final int DEFAULT_EXPORT_FETCH_MILLIS = 5000;
+
+	public static final int DEFAULT_REFRESH_PER_SECOND = 0;
+
+	public static final int DEFAULT_REFRESH_MIN_INTERVAL_MILLIS = 5000;
+
+	public static final int DEFAULT_REFRESH_MAX_INTERVAL_MILLIS = 300000;
+
+	public static final int DEFAULT_REFRESH_MAX_STALE_MILLIS = 600000;
+
+	public static final int REFRESH_TICK_MILLIS = 100;
+
+	public static final int DEFAULT_PORT = 8080;
+
+	public static final int DEFAULT_REPLICATION_POLL_MILLIS = 1000;
+
+	public static final int DEFAULT_REPLICATION_FAILOVER_MILLIS = 5000;
+
+	public static final int DEFAULT_SNAPSHOT_WRITE_MILLIS = 1000;
+
+	public static final int DEFAULT_WARMUP_ITERATIONS = 2000;
+
+	public static final int DEFAULT_WARMUP_REMOTE_ITERATIONS = 20;
+
+	public static final int DEFAULT_WARMUP_DEADLINE_MILLIS = 2000;
+
+	public static final String QUERY_PARAM_EPOCH = "epoch";
+
+	public static final String QUERY_PARAM_SINCE = "since";
+
+	public static final String HEADER_ACCEPT = "Accept";
+
+	public static final String HEADER_VARY = "Vary";
+
+	public static final String HEADER_REQUEST_ID = "X-Request-Id";
+
+	public static final String HEADER_API_KEY = "X-API-Key";
+
+	public static final String HEADER_FORWARDED_FOR = "X-Forwarded-For";
+
+	public static final String HEADER_ADMIN_KEY = "X-Admin-Key";
+
+	public static final String HEADER_DEADLINE = "X-Deadline-Ms";
+
+	public static final String HEADER_RESULT_COMPLETE = "X-Result-Complete";
+
+	public static final String HEADER_MISSING_PROVIDERS = "X-Missing-Providers";
+
+	public static final String HEADER_MISSING_SHARDS = "X-Missing-Shards";
 	
+	public static final String PATH_PARAM_BIC = ":bic";
+
 	public static final String QUERY_PARAM_COUNTRYCODE = "countryCode";
 
 	public static final String QUERY_PARAM_NAME = "name";
@@ -16,11 +108,35 @@ public final class Constants {
 
 	public static final String QUERY_PARAM_AUTH = "auth";
 	
+	public static final String QUERY_PARAM_AFTER = "after";
+
+	public static final String QUERY_PARAM_SORT = "sort";
+
+	public static final String QUERY_PARAM_DEADLINE = "deadline";
+
+	public static final String QUERY_PARAM_FIELDS = "fields";
+
 	public static final String QUERY_PARAM_PAGE = "page";
 	
 	public static final String QUERY_PARAM_PAGESIZE = "size";
 	
+	public static final String CONTENT_TYPE_NDJSON = "application/x-ndjson";
+
 	public static final String MSG_INTERNAL_SERVER = "{\"message\": \"Internal Server Error.\"}";
 	
+	public static final String MSG_BAD_REQUEST = "{\"message\": \"Bad Request.\"}";
+
+	public static final String MSG_TOO_MANY_REQUESTS = "{\"message\": \"Too Many Requests.\"}";
+
+	public static final String MSG_SERVICE_UNAVAILABLE = "{\"message\": \"Service Unavailable.\"}";
+
+	public static final String MSG_PROVIDERS_UNAVAILABLE = "{\"message\": \"Bank Providers Unavailable.\"}";
+
+	public static final String MSG_FORBIDDEN = "{\"message\": \"Forbidden.\"}";
+
+	public static final String MSG_NOT_FOUND = "{\"message\": \"Not Found.\"}";
+
+	public static final String MSG_NOT_ROUTED = "{\"message\": \"Not Implemented by the router, ask the shards.\"}";
+
 	public static final String MSG_NO_RESULTS = "{\"message\": \"No Results Found.\"}";
 }
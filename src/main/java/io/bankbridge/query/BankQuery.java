@@ -0,0 +1,164 @@
+package io.bankbridge.query;
+
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.Constants;
+import spark.Request;
+import spark.utils.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Filter, sort and pagination parameters of a request, parsed once and shared by both API versions.
+ * Conditions are ordered by the number of banks they are estimated to let through, so the most selective
+ * condition is evaluated first and non-matching banks are rejected as early as possible.
+ */
+public final class BankQuery {
+
+    private final String key;
+    private final Condition[] conditions;
+    private final SortSpec sort;
+    private final int page;
+    private final int pageSize;
+
+    private BankQuery(String key, Condition[] conditions, SortSpec sort, int page, int pageSize) {
+        this.key = key;
+        this.conditions = conditions;
+        this.sort = sort;
+        this.page = page;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Compiles the request parameters into a query.
+     *
+     * @param request    the request object containing filter, sort and pagination parameters
+     * @param statistics the statistics used to order the conditions by selectivity
+     * @return the compiled query
+     * @throws IllegalArgumentException if a sort, page or size parameter is invalid
+     */
+    public static BankQuery compile(Request request, FieldStatistics statistics) {
+        return compile(request::queryParams, statistics);
+    }
+
+    /**
+     * Compiles query parameters that do not come from an HTTP request, e.g. synthetic warm-up queries.
+     *
+     * @param params     the parameter value by name, null if absent
+     * @param statistics the statistics used to order the conditions by selectivity
+     * @return the compiled query
+     * @throws IllegalArgumentException if a sort, page or size parameter is invalid
+     */
+    public static BankQuery compile(Function<String, String> params, FieldStatistics statistics) {
+        List<Condition> conditions = new ArrayList<>();
+        StringBuilder key = new StringBuilder();
+        for (QueryField field : QueryField.values()) {
+            String value = params.apply(field.getParam());
+            if (StringUtils.isNotBlank(value)) {
+                conditions.add(new Condition(field, value));
+                // length-prefixed, so a value containing '&' or '=' cannot pass for several conditions
+                key.append(field.getParam()).append('=').append(value.length()).append(':').append(value).append('&');
+            }
+        }
+        conditions.sort(Comparator.comparingDouble(statistics::estimateMatches));
+
+        String pageStr = params.apply(Constants.QUERY_PARAM_PAGE);
+        String pageSizeStr = params.apply(Constants.QUERY_PARAM_PAGESIZE);
+        int page = StringUtils.isNotBlank(pageStr) ? Integer.parseInt(pageStr) : 0;
+        int pageSize = StringUtils.isNotBlank(pageSizeStr) ? Integer.parseInt(pageSizeStr) : Constants.DEFAULT_PAGE_SIZE;
+        if (pageSize < 1)
+            throw new IllegalArgumentException("Page size must be positive");
+        // offset + limit of the page has to fit in an int, where the page is collected
+        if ((long) page * pageSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Page " + page + " of size " + pageSize + " is out of range");
+
+        SortSpec sort = SortSpec.parse(params.apply(Constants.QUERY_PARAM_SORT));
+        key.append("sort=").append(sort != null ? sort.getKey() : "")
+                .append("&page=").append(Math.max(page, 0)).append("&size=").append(pageSize);
+        return new BankQuery(key.toString(), conditions.toArray(new Condition[0]), sort, page, pageSize);
+    }
+
+    /**
+     * @return a key that is equal for queries with the same filters, sort and page, usable in cache keys
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @param bankModel the bank to check
+     * @return true if the bank matches every condition
+     */
+    public boolean matches(BankModel bankModel) {
+        for (Condition condition : conditions) {
+            if (!condition.test(bankModel))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Picks the most selective condition that can be answered from an index.
+     *
+     * @param indexedFields the fields the caller keeps an index for
+     * @return the condition to use as access path, or null if the whole data set has to be scanned
+     */
+    public Condition getAccessCondition(Set<QueryField> indexedFields) {
+        for (Condition condition : conditions) {
+            if (indexedFields.contains(condition.getField()))
+                return condition;
+        }
+        return null;
+    }
+
+    /**
+     * Estimates how many banks match the query, bounded by its most selective condition.
+     *
+     * @param statistics the statistics of the data set the query runs against
+     * @return the estimated number of matching banks
+     */
+    public double estimateMatches(FieldStatistics statistics) {
+        return conditions.length > 0 ? statistics.estimateMatches(conditions[0]) : statistics.getTotal();
+    }
+
+    /**
+     * @return the requested ordering, or null if the caller's natural order is kept
+     */
+    public SortSpec getSort() {
+        return sort;
+    }
+
+    /**
+     * @return true if a single page was requested, false if all matching banks are returned
+     */
+    public boolean isPaged() {
+        return page > 0;
+    }
+
+    /**
+     * @return the number of matching banks preceding the requested page
+     */
+    public int getOffset() {
+        return isPaged() ? (int) ((long) (page - 1) * pageSize) : 0;
+    }
+
+    /**
+     * @return the maximum number of banks returned
+     */
+    public int getLimit() {
+        return isPaged() ? pageSize : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Creates a collector gathering the result of this query.
+     *
+     * @param inputSorted true if the banks will be offered in the requested order already
+     * @return a new collector
+     */
+    public PageCollector newCollector(boolean inputSorted) {
+        return new PageCollector(this, inputSorted || sort == null);
+    }
+}
@@ -0,0 +1,33 @@
+package io.bankbridge.query;
+
+import io.bankbridge.model.BankModel;
+
+/**
+ * A single filter of a query: a field and the value it has to match.
+ */
+public final class Condition {
+
+    private final QueryField field;
+    private final String value;
+
+    public Condition(QueryField field, String value) {
+        this.field = field;
+        this.value = value;
+    }
+
+    public QueryField getField() {
+        return field;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @param bankModel the bank to check
+     * @return true if the bank matches this condition
+     */
+    public boolean test(BankModel bankModel) {
+        return field.test(bankModel, value);
+    }
+}
@@ -0,0 +1,89 @@
+package io.bankbridge.query;
+
+import io.bankbridge.model.BankModel;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number of banks per field value, used to estimate how many banks a condition lets through.
+ * Updates are not atomic across fields, which is fine for estimates.
+ */
+public class FieldStatistics {
+
+    /**
+     * Assumed fraction of banks matching a condition no statistics are kept for, such as a name substring.
+     */
+    static final double UNKNOWN_SELECTIVITY = 0.5;
+
+    private final Map<QueryField, Map<String, AtomicLong>> counts = new EnumMap<>(QueryField.class);
+    private final AtomicLong total = new AtomicLong();
+
+    public FieldStatistics() {
+        for (QueryField field : QueryField.values()) {
+            counts.put(field, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Records a bank.
+     *
+     * @param bankModel the bank to record, ignored if null
+     */
+    public void add(BankModel bankModel) {
+        update(bankModel, 1);
+    }
+
+    /**
+     * Forgets a previously recorded bank.
+     *
+     * @param bankModel the bank to forget, ignored if null
+     */
+    public void remove(BankModel bankModel) {
+        update(bankModel, -1);
+    }
+
+    /**
+     * Replaces a previously recorded bank with its new version.
+     *
+     * @param previous the recorded version, can be null
+     * @param current  the new version, can be null
+     */
+    public void replace(BankModel previous, BankModel current) {
+        remove(previous);
+        add(current);
+    }
+
+    private void update(BankModel bankModel, long delta) {
+        if (bankModel == null)
+            return;
+        total.addAndGet(delta);
+        for (Map.Entry<QueryField, Map<String, AtomicLong>> entry : counts.entrySet()) {
+            for (String value : entry.getKey().values(bankModel)) {
+                entry.getValue().computeIfAbsent(value, key -> new AtomicLong()).addAndGet(delta);
+            }
+        }
+    }
+
+    /**
+     * @return the number of recorded banks
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Estimates how many recorded banks match the condition.
+     *
+     * @param condition the condition to estimate
+     * @return the exact count for fields with statistics, otherwise a fixed fraction of all banks
+     */
+    public double estimateMatches(Condition condition) {
+        if (condition.getField() == QueryField.NAME)
+            return total.get() * UNKNOWN_SELECTIVITY;
+        AtomicLong count = counts.get(condition.getField()).get(condition.getValue());
+        return count != null ? count.get() : 0;
+    }
+}
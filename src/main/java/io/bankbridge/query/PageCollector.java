@@ -0,0 +1,67 @@
+package io.bankbridge.query;
+
+import io.bankbridge.model.BankModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gathers the requested page of a query from banks offered one at a time.
+ * When the banks arrive in the requested order the collector reports completion as soon as the page is filled,
+ * so callers can stop scanning or fetching. Otherwise a sorted page is selected with a bounded heap.
+ */
+public final class PageCollector {
+
+    private final BankQuery query;
+    private final boolean inputSorted;
+    private final TopKHeap<BankModel> heap;
+    private final List<BankModel> items = new ArrayList<>();
+    private int toSkip;
+
+    PageCollector(BankQuery query, boolean inputSorted) {
+        this.query = query;
+        this.inputSorted = inputSorted;
+        this.toSkip = query.getOffset();
+        this.heap = !inputSorted && query.isPaged()
+                ? new TopKHeap<>(query.getOffset() + query.getLimit(), query.getSort().getComparator())
+                : null;
+    }
+
+    /**
+     * Offers a bank to the collector.
+     *
+     * @param bankModel the bank, ignored if null or not matching the query
+     * @return true if more banks are needed, false once the page is complete
+     */
+    public boolean offer(BankModel bankModel) {
+        if (bankModel != null && query.matches(bankModel)) {
+            if (heap != null)
+                heap.offer(bankModel);
+            else if (toSkip > 0)
+                toSkip--;
+            else
+                items.add(bankModel);
+        }
+        return !isComplete();
+    }
+
+    /**
+     * @return true if no further bank can change the result
+     */
+    public boolean isComplete() {
+        return inputSorted && items.size() >= query.getLimit();
+    }
+
+    /**
+     * @return the banks of the requested page in the requested order
+     */
+    public List<BankModel> getResult() {
+        if (heap != null) {
+            List<BankModel> sorted = heap.toSortedList();
+            return sorted.subList(Math.min(query.getOffset(), sorted.size()), sorted.size());
+        }
+        if (!inputSorted)
+            items.sort(query.getSort().getComparator());
+        return items;
+    }
+}
@@ -0,0 +1,112 @@
+package io.bankbridge.query;
+
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.Constants;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bank fields that can be filtered on, with the same matching semantics for both API versions.
+ */
+public enum QueryField {
+
+    BIC(Constants.QUERY_PARAM_BIC) {
+        @Override
+        boolean test(BankModel bankModel, String value) {
+            return value.equals(bankModel.getBic());
+        }
+
+        @Override
+        Collection<String> values(BankModel bankModel) {
+            return singleton(bankModel.getBic());
+        }
+    },
+
+    COUNTRY_CODE(Constants.QUERY_PARAM_COUNTRYCODE) {
+        @Override
+        boolean test(BankModel bankModel, String value) {
+            return value.equals(bankModel.getCountryCode());
+        }
+
+        @Override
+        Collection<String> values(BankModel bankModel) {
+            return singleton(bankModel.getCountryCode());
+        }
+    },
+
+    AUTH(Constants.QUERY_PARAM_AUTH) {
+        @Override
+        boolean test(BankModel bankModel, String value) {
+            return value.equals(bankModel.getAuth());
+        }
+
+        @Override
+        Collection<String> values(BankModel bankModel) {
+            return singleton(bankModel.getAuth());
+        }
+    },
+
+    PRODUCT(Constants.QUERY_PARAM_PRODUCT) {
+        @Override
+        boolean test(BankModel bankModel, String value) {
+            return bankModel.getProducts() != null && bankModel.getProducts().contains(value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Collection<String> values(BankModel bankModel) {
+            List<String> products = bankModel.getProducts();
+            return products != null ? products : Collections.emptyList();
+        }
+    },
+
+    /**
+     * Matches banks whose name contains the value. Substring matches cannot be counted per value,
+     * so this field has no statistics.
+     */
+    NAME(Constants.QUERY_PARAM_NAME) {
+        @Override
+        boolean test(BankModel bankModel, String value) {
+            return bankModel.getName() != null && bankModel.getName().contains(value);
+        }
+
+        @Override
+        Collection<String> values(BankModel bankModel) {
+            return Collections.emptyList();
+        }
+    };
+
+    private final String param;
+
+    QueryField(String param) {
+        this.param = param;
+    }
+
+    /**
+     * @return the query parameter holding the filter value for this field
+     */
+    public String getParam() {
+        return param;
+    }
+
+    /**
+     * Checks whether the bank matches the filter value for this field.
+     *
+     * @param bankModel the bank to check
+     * @param value     the non-blank filter value
+     * @return true if the bank matches
+     */
+    abstract boolean test(BankModel bankModel, String value);
+
+    /**
+     * @param bankModel the bank to read
+     * @return the exact values of this field that statistics are kept for
+     */
+    abstract Collection<String> values(BankModel bankModel);
+
+    private static Collection<String> singleton(String value) {
+        return value != null ? Collections.singletonList(value) : Collections.emptyList();
+    }
+}
@@ -0,0 +1,86 @@
+package io.bankbridge.query;
+
+import io.bankbridge.model.BankModel;
+import spark.utils.StringUtils;
+
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Ordering requested through the {@code sort} query parameter, e.g. {@code sort=countryCode,-name}.
+ * Keys are applied left to right, a leading {@code -} sorts that key in descending order.
+ */
+public final class SortSpec {
+
+    private final String key;
+    private final Comparator<BankModel> comparator;
+
+    private SortSpec(String key, Comparator<BankModel> comparator) {
+        this.key = key;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Parses the value of the {@code sort} query parameter.
+     *
+     * @param sortParam the raw parameter value, can be blank
+     * @return the parsed sort specification, or null if no sorting was requested
+     * @throws IllegalArgumentException if a key names an unknown field or a field is used more than once
+     */
+    public static SortSpec parse(String sortParam) {
+        if (StringUtils.isBlank(sortParam))
+            return null;
+
+        Set<String> fields = new LinkedHashSet<>();
+        StringBuilder key = new StringBuilder();
+        Comparator<BankModel> comparator = null;
+        for (String token : sortParam.split(",")) {
+            String field = token.trim();
+            boolean descending = field.startsWith("-");
+            if (descending || field.startsWith("+"))
+                field = field.substring(1);
+            if (!fields.add(field))
+                throw new IllegalArgumentException("Sort field used more than once: " + field);
+
+            Comparator<BankModel> fieldComparator = Comparator.comparing(extractor(field),
+                    Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+            if (descending)
+                fieldComparator = fieldComparator.reversed();
+            comparator = comparator == null ? fieldComparator : comparator.thenComparing(fieldComparator);
+
+            if (key.length() > 0)
+                key.append(',');
+            key.append(descending ? "-" : "").append(field);
+        }
+        return new SortSpec(key.toString(), comparator);
+    }
+
+    private static Function<BankModel, String> extractor(String field) {
+        switch (field) {
+            case "name":
+                return BankModel::getName;
+            case "bic":
+                return BankModel::getBic;
+            case "countryCode":
+                return BankModel::getCountryCode;
+            default:
+                throw new IllegalArgumentException("Unknown sort field: " + field);
+        }
+    }
+
+    /**
+     * @return the normalized specification, equal for equivalent sort parameters, usable as a cache key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the comparator ordering banks according to this specification
+     */
+    public Comparator<BankModel> getComparator() {
+        return comparator;
+    }
+}
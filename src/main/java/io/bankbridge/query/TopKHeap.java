@@ -0,0 +1,72 @@
+package io.bankbridge.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the first {@code k} items of a stream according to a comparator, without holding or sorting the whole stream.
+ * The heap is ordered worst-first, so each offered item is compared against the current worst kept item only.
+ * Items comparing equal keep their offering order, as a stable full sort would.
+ *
+ * @param <T> the type of the items
+ */
+public class TopKHeap<T> {
+
+    private final int k;
+    private final Comparator<Ranked<T>> order;
+    private final PriorityQueue<Ranked<T>> heap;
+    private long sequence;
+
+    /**
+     * @param k          the number of items to keep
+     * @param comparator the ordering of the items, the smallest items are kept
+     */
+    public TopKHeap(int k, Comparator<? super T> comparator) {
+        this.k = k;
+        this.order = Comparator.<Ranked<T>, T>comparing(ranked -> ranked.item, comparator)
+                .thenComparingLong(ranked -> ranked.sequence);
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), order.reversed());
+    }
+
+    /**
+     * Offers an item, keeping it only if it is among the first {@code k} items seen so far.
+     *
+     * @param item the item to offer
+     */
+    public void offer(T item) {
+        if (k <= 0)
+            return;
+        Ranked<T> ranked = new Ranked<>(item, sequence++);
+        if (heap.size() < k) {
+            heap.add(ranked);
+        } else if (order.compare(ranked, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(ranked);
+        }
+    }
+
+    /**
+     * @return the kept items in ascending order
+     */
+    public List<T> toSortedList() {
+        List<Ranked<T>> ranked = new ArrayList<>(heap);
+        ranked.sort(order);
+        List<T> items = new ArrayList<>(ranked.size());
+        for (Ranked<T> entry : ranked) {
+            items.add(entry.item);
+        }
+        return items;
+    }
+
+    private static final class Ranked<T> {
+        private final T item;
+        private final long sequence;
+
+        private Ranked(T item, long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+    }
+}
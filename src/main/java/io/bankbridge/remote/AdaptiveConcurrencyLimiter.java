@@ -0,0 +1,235 @@
+package io.bankbridge.remote;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent calls to one remote host and adapts that limit to the latency the host shows,
+ * in the style of AIMD/Vegas congestion control:
+ * <ul>
+ * <li>while the smoothed round trip time stays close to the lowest one observed, the limit grows by about one per
+ * {@code limit} successful calls,</li>
+ * <li>when a run of calls pushes the smoothed round trip time beyond the tolerated factor of that baseline, and
+ * by more than an absolute margin, so the jitter of sub-millisecond calls does not count as congestion, the limit
+ * shrinks multiplicatively, at most once per {@code limit} calls,</li>
+ * <li>when calls fail, the limit shrinks more sharply.</li>
+ * </ul>
+ * Calls over the limit wait in a bounded queue for a bounded time and are rejected beyond that.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final long LATENCY_TOLERANCE_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final double RTT_SMOOTHING = 0.1;
+    private static final double LATENCY_BACKOFF = 0.9;
+    private static final double ERROR_BACKOFF = 0.5;
+
+    /**
+     * The baseline is forgotten after this many samples, so a host that became permanently slower gets a new one.
+     */
+    private static final int BASELINE_RESET_SAMPLES = 1000;
+
+    private final String host;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long lastRttNanos;
+    private double smoothedRttNanos = -1;
+    private int samples;
+    private int samplesSinceBackoff;
+    private long rejected;
+
+    /**
+     * @param host         the host the limiter protects, for reporting
+     * @param initialLimit the limit before anything is known about the host
+     * @param minLimit     the lowest limit, calls are never blocked below it
+     * @param maxLimit     the highest limit
+     * @param maxQueued    the number of calls that may wait for a free slot
+     * @param maxWaitMillis how long a queued call waits before it is rejected
+     */
+    public AdaptiveConcurrencyLimiter(String host, int initialLimit, int minLimit, int maxLimit, int maxQueued,
+                                      long maxWaitMillis) {
+        this.host = host;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Takes a slot for a call, waiting in the queue if the limit is reached.
+     *
+     * @throws LimitExceededException if the queue is full or no slot was freed in time
+     * @throws InterruptedException   if the thread was interrupted while waiting
+     */
+    public void acquire() throws LimitExceededException, InterruptedException {
+        acquire(Deadline.none());
+    }
+
+    /**
+     * Takes a slot for a call, waiting in the queue if the limit is reached, but not past the caller's deadline.
+     *
+     * @param deadline the deadline of the call
+     * @throws LimitExceededException if the queue is full or no slot was freed in time
+     * @throws InterruptedException   if the thread was interrupted while waiting
+     */
+    public void acquire(Deadline deadline) throws LimitExceededException, InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                if (queued >= maxQueued) {
+                    rejected++;
+                    throw new LimitExceededException(host, (int) limit);
+                }
+                queued++;
+                try {
+                    long remaining = Math.min(maxWaitNanos, deadline.remainingNanos());
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0) {
+                            rejected++;
+                            throw new LimitExceededException(host, (int) limit);
+                        }
+                        remaining = released.awaitNanos(remaining);
+                    }
+                } finally {
+                    queued--;
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a completed call and adapts the limit to its outcome.
+     *
+     * @param rttNanos the round trip time of the call
+     * @param success  false if the call failed or the host answered with a server error
+     */
+    public void release(long rttNanos, boolean success) {
+        lock.lock();
+        try {
+            inFlight--;
+            lastRttNanos = rttNanos;
+            if (!success) {
+                limit = Math.max(minLimit, limit * ERROR_BACKOFF);
+                samplesSinceBackoff = 0;
+            } else {
+                if (++samples >= BASELINE_RESET_SAMPLES) {
+                    samples = 0;
+                    minRttNanos = rttNanos;
+                }
+                minRttNanos = Math.min(minRttNanos, rttNanos);
+                double threshold = congestionThresholdNanos();
+                // a single outlier moves the average by a bounded step, only a run of slow calls lifts it
+                double sample = Math.min(rttNanos, 2 * threshold);
+                smoothedRttNanos = smoothedRttNanos < 0 ? sample
+                        : smoothedRttNanos + RTT_SMOOTHING * (sample - smoothedRttNanos);
+                samplesSinceBackoff++;
+                // the current call must be slow too, so an average still decaying from cold-start calls does not count
+                if (smoothedRttNanos > threshold && rttNanos > threshold) {
+                    // the smoothed time reacts over several calls, back off once per round of calls
+                    if (samplesSinceBackoff >= limit) {
+                        limit = Math.max(minLimit, limit * LATENCY_BACKOFF);
+                        samplesSinceBackoff = 0;
+                    }
+                } else if (inFlight + 1 >= limit / 2) {
+                    // only grow while the limit is actually being used, otherwise it drifts up unchecked
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a call that was abandoned by its caller, e.g. at the caller's deadline, without adapting
+     * the limit, as its outcome says nothing about the host.
+     */
+    public void releaseWithoutSample() {
+        lock.lock();
+        try {
+            inFlight--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double congestionThresholdNanos() {
+        return Math.max(minRttNanos * LATENCY_TOLERANCE, minRttNanos + LATENCY_TOLERANCE_FLOOR_NANOS);
+    }
+
+    /**
+     * @return a consistent view of the limiter state
+     */
+    public Snapshot snapshot() {
+        lock.lock();
+        try {
+            return new Snapshot((int) limit, inFlight, queued, rejected,
+                    minRttNanos == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMillis(minRttNanos),
+                    TimeUnit.NANOSECONDS.toMillis(lastRttNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * State of a limiter at one point in time, as exposed on the status route.
+     */
+    public static class Snapshot {
+        private final int limit;
+        private final int inFlight;
+        private final int queued;
+        private final long rejected;
+        private final long minRttMillis;
+        private final long lastRttMillis;
+
+        Snapshot(int limit, int inFlight, int queued, long rejected, long minRttMillis, long lastRttMillis) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.queued = queued;
+            this.rejected = rejected;
+            this.minRttMillis = minRttMillis;
+            this.lastRttMillis = lastRttMillis;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getMinRttMillis() {
+            return minRttMillis;
+        }
+
+        public long getLastRttMillis() {
+            return lastRttMillis;
+        }
+    }
+}
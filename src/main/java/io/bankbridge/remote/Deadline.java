@@ -0,0 +1,105 @@
+package io.bankbridge.remote;
+
+import io.bankbridge.model.Constants;
+import spark.Request;
+import spark.utils.StringUtils;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Point in time by which a client wants its answer, propagated to every remote call made on its behalf.
+ */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @return a deadline that never expires
+     */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * @param millis the time budget
+     * @return a deadline expiring after the budget, counted from now
+     */
+    public static Deadline in(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Reads the client's time budget in milliseconds from the {@code deadline} query parameter or,
+     * if absent, the {@code X-Deadline-Ms} header.
+     *
+     * @param request the request object
+     * @return the deadline of the request, or {@link #none()} if the client did not set a budget
+     * @throws IllegalArgumentException if the budget is not a positive number
+     */
+    public static Deadline fromRequest(Request request) {
+        String budget = request.queryParams(Constants.QUERY_PARAM_DEADLINE);
+        if (StringUtils.isBlank(budget))
+            budget = request.headers(Constants.HEADER_DEADLINE);
+        if (StringUtils.isBlank(budget))
+            return NONE;
+
+        long millis = Long.parseLong(budget.trim());
+        if (millis <= 0)
+            throw new IllegalArgumentException("Deadline must be positive");
+        return in(millis);
+    }
+
+    /**
+     * @return true if this deadline never expires
+     */
+    public boolean isUnbounded() {
+        return this == NONE;
+    }
+
+    /**
+     * @return true if the deadline has passed
+     */
+    public boolean isExpired() {
+        return !isUnbounded() && remainingNanos() <= 0;
+    }
+
+    /**
+     * @return the time left, negative once expired
+     */
+    public long remainingNanos() {
+        return isUnbounded() ? Long.MAX_VALUE : deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     * @return the time left in whole milliseconds, at least 1 so it can be used as a socket timeout
+     */
+    public int remainingMillisForTimeout() {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(remainingNanos())));
+    }
+
+    /**
+     * Waits for the result of a future until the deadline. Once the deadline has passed, only futures
+     * that are already done return a result.
+     *
+     * @param future the future to wait for
+     * @param <T>    the type of the result
+     * @return the result of the future
+     * @throws TimeoutException     if the future was not done by the deadline
+     * @throws ExecutionException   if the computation failed
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public <T> T await(Future<T> future) throws TimeoutException, ExecutionException, InterruptedException {
+        if (isUnbounded())
+            return future.get();
+        return future.get(Math.max(0, remainingNanos()), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,15 @@
+package io.bankbridge.remote;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a call to a remote host is rejected because its concurrency limit and queue are exhausted.
+ */
+public class LimitExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public LimitExceededException(String host, int limit) {
+        super("Concurrency limit of " + limit + " reached for " + host);
+    }
+}
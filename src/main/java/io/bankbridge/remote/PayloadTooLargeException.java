@@ -0,0 +1,15 @@
+package io.bankbridge.remote;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a remote response body is larger than the accepted payload size.
+ */
+public class PayloadTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PayloadTooLargeException(long maxBytes) {
+        super("Remote payload exceeds " + maxBytes + " bytes");
+    }
+}
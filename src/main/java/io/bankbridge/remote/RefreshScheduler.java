@@ -0,0 +1,283 @@
+package io.bankbridge.remote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Refreshes cached remote banks in the background, giving the outbound capacity to the banks that are asked for.
+ * <ul>
+ * <li>Every provider has a refresh interval that shrinks with its popularity, an exponentially decaying count of the
+ * queries that returned its bank: unqueried providers are refreshed every {@code maxInterval}, popular ones down to
+ * every {@code minInterval}.</li>
+ * <li>Providers wait in a queue ordered by due time, so a tick only touches the providers that are due, whatever the
+ * number of configured providers.</li>
+ * <li>Due providers are refreshed in order of popularity times age, within a global budget of refreshes per second;
+ * the rest stay ready for the next tick.</li>
+ * <li>Due times are jittered, and the first refreshes are spread over the time the budget needs to cover every
+ * provider once, so providers never become due together.</li>
+ * </ul>
+ * Fetches made on behalf of clients count as refreshes, so a provider is not refreshed right after a live fetch.
+ */
+public class RefreshScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshScheduler.class);
+
+    private static final long DEMAND_HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final double JITTER = 0.1;
+
+    /**
+     * Refreshes the cached bank of one provider.
+     */
+    public interface Refresher {
+
+        /**
+         * @param provider the provider to refresh
+         * @throws Exception if the refresh failed
+         */
+        void refresh(String provider) throws Exception;
+    }
+
+    private final double perSecond;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final Refresher refresher;
+    private final Executor executor;
+    private final LongSupplier clock;
+
+    private final Map<String, ProviderState> states = new ConcurrentHashMap<>();
+    private final PriorityQueue<Scheduled> dueQueue = new PriorityQueue<>(Comparator.comparingLong(s -> s.dueNanos));
+
+    /**
+     * Due providers not yet refreshed for lack of budget; only touched by the ticking thread.
+     */
+    private final List<ProviderState> ready = new ArrayList<>();
+    private double allowance;
+    private long lastTickNanos;
+
+    /**
+     * @param perSecond         the global budget of refreshes per second
+     * @param minIntervalMillis the refresh interval of the most popular providers
+     * @param maxIntervalMillis the refresh interval of providers nobody queries
+     * @param refresher         performs a refresh
+     * @param executor          runs the refreshes
+     * @param clock             the time source in nanoseconds, {@code System::nanoTime} outside of tests
+     */
+    public RefreshScheduler(double perSecond, long minIntervalMillis, long maxIntervalMillis, Refresher refresher,
+                            Executor executor, LongSupplier clock) {
+        this.perSecond = perSecond;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        this.maxIntervalNanos = TimeUnit.MILLISECONDS.toNanos(maxIntervalMillis);
+        this.refresher = refresher;
+        this.executor = executor;
+        this.clock = clock;
+        this.lastTickNanos = clock.getAsLong();
+    }
+
+    /**
+     * Schedules the first refresh of every provider, spread over the time the budget needs to refresh them all.
+     *
+     * @param providers the provider names
+     */
+    public void registerAll(Collection<String> providers) {
+        long now = clock.getAsLong();
+        long spreadNanos = (long) (TimeUnit.SECONDS.toNanos(1) * providers.size() / perSecond);
+        for (String provider : providers) {
+            ProviderState state = new ProviderState(provider, now);
+            if (states.putIfAbsent(provider, state) == null)
+                schedule(state, now + (long) (ThreadLocalRandom.current().nextDouble() * spreadNanos));
+        }
+    }
+
+    /**
+     * Counts a query that returned the bank of the provider. A provider that became popular enough to be due much
+     * earlier than planned is moved up in the queue.
+     *
+     * @param provider the provider name
+     */
+    public void recordDemand(String provider) {
+        ProviderState state = states.get(provider);
+        if (state == null)
+            return;
+        long now = clock.getAsLong();
+        long dueNanos;
+        synchronized (state) {
+            state.demand = state.demandAt(now) + 1;
+            state.demandUpdatedNanos = now;
+            dueNanos = state.lastRefreshNanos + intervalNanos(state.demand);
+            if (dueNanos >= state.dueNanos - minIntervalNanos)
+                return;
+        }
+        schedule(state, Math.max(now, dueNanos));
+    }
+
+    /**
+     * Records that the provider's bank was fetched, by a refresh or on behalf of a client.
+     *
+     * @param provider the provider name
+     */
+    public void recordFetched(String provider) {
+        ProviderState state = states.get(provider);
+        if (state != null) {
+            synchronized (state) {
+                state.lastRefreshNanos = clock.getAsLong();
+                state.fetched = true;
+            }
+        }
+    }
+
+    /**
+     * Moves the due providers to the ready list and starts as many refreshes as the budget allows, most popular
+     * and oldest first. Called periodically by a single thread.
+     *
+     * @return the number of refreshes started
+     */
+    public int tick() {
+        long now = clock.getAsLong();
+        allowance = Math.min(Math.max(perSecond, 1), allowance + perSecond * (now - lastTickNanos) / 1e9);
+        lastTickNanos = now;
+
+        // getBacklog reads the ready list from other threads
+        synchronized (ready) {
+            synchronized (dueQueue) {
+                while (!dueQueue.isEmpty() && dueQueue.peek().dueNanos <= now) {
+                    Scheduled scheduled = dueQueue.poll();
+                    ProviderState state = scheduled.state;
+                    if (scheduled.version != state.version || state.ready || state.refreshing)
+                        continue;
+                    long dueNanos;
+                    boolean fetched;
+                    synchronized (state) {
+                        dueNanos = state.lastRefreshNanos + intervalNanos(state.demandAt(now));
+                        fetched = state.fetched;
+                    }
+                    if (fetched && dueNanos > now + minIntervalNanos / 2) {
+                        // fetched on behalf of a client in the meantime
+                        scheduleLocked(state, jittered(now, dueNanos - now));
+                        continue;
+                    }
+                    state.ready = true;
+                    ready.add(state);
+                }
+            }
+            if (ready.isEmpty() || allowance < 1)
+                return 0;
+
+            for (ProviderState state : ready) {
+                synchronized (state) {
+                    state.priority = (1 + state.demandAt(now)) * (now - state.lastRefreshNanos);
+                }
+            }
+            ready.sort(Comparator.comparingDouble((ProviderState s) -> s.priority).reversed());
+
+            int started = Math.min(ready.size(), (int) allowance);
+            List<ProviderState> batch = ready.subList(0, started);
+            for (ProviderState state : batch) {
+                state.ready = false;
+                state.refreshing = true;
+                executor.execute(() -> refresh(state));
+            }
+            batch.clear();
+            allowance -= started;
+            return started;
+        }
+    }
+
+    /**
+     * @return the number of due providers waiting for budget
+     */
+    public int getBacklog() {
+        synchronized (ready) {
+            return ready.size();
+        }
+    }
+
+    private void refresh(ProviderState state) {
+        try {
+            refresher.refresh(state.provider);
+        } catch (Exception e) {
+            logger.warn("Refresh of {} failed: {}", state.provider, e.getMessage());
+        } finally {
+            long now = clock.getAsLong();
+            long intervalNanos;
+            synchronized (state) {
+                intervalNanos = intervalNanos(state.demandAt(now));
+            }
+            state.refreshing = false;
+            // failed providers are retried after their regular interval, so they cannot eat up the budget
+            schedule(state, jittered(now, intervalNanos));
+        }
+    }
+
+    private long intervalNanos(double demand) {
+        return Math.max(minIntervalNanos, (long) (maxIntervalNanos / (1 + demand)));
+    }
+
+    private static long jittered(long now, long intervalNanos) {
+        return now + (long) (intervalNanos * (1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+    }
+
+    private void schedule(ProviderState state, long dueNanos) {
+        synchronized (dueQueue) {
+            scheduleLocked(state, dueNanos);
+        }
+    }
+
+    /**
+     * Queues the provider with a new version, so its earlier queue entries are skipped when they come up.
+     */
+    private void scheduleLocked(ProviderState state, long dueNanos) {
+        synchronized (state) {
+            state.dueNanos = dueNanos;
+            state.version++;
+            dueQueue.add(new Scheduled(state, dueNanos, state.version));
+        }
+    }
+
+    private static final class ProviderState {
+        final String provider;
+        double demand;
+        long demandUpdatedNanos;
+        long lastRefreshNanos;
+        boolean fetched;
+        long dueNanos = Long.MAX_VALUE;
+        int version;
+        double priority;
+        volatile boolean ready;
+        volatile boolean refreshing;
+
+        ProviderState(String provider, long now) {
+            this.provider = provider;
+            this.demandUpdatedNanos = now;
+            // never fetched providers age from their registration
+            this.lastRefreshNanos = now;
+        }
+
+        double demandAt(long now) {
+            return demand * Math.pow(0.5, (double) (now - demandUpdatedNanos) / DEMAND_HALF_LIFE_NANOS);
+        }
+    }
+
+    private static final class Scheduled {
+        final ProviderState state;
+        final long dueNanos;
+        final int version;
+
+        Scheduled(ProviderState state, long dueNanos, int version) {
+            this.state = state;
+            this.dueNanos = dueNanos;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package io.bankbridge.remote;
+
+import io.bankbridge.Settings;
+import io.bankbridge.model.Constants;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One {@link AdaptiveConcurrencyLimiter} per remote host, created on first use.
+ */
+public class RemoteLimiters {
+
+    private static final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the limiter of the host serving the URL.
+     *
+     * @param url the remote URL
+     * @return the limiter shared by all calls to the same host and port
+     */
+    public static AdaptiveConcurrencyLimiter forUrl(String url) {
+        URI uri = URI.create(url);
+        String host = uri.getHost() + ":" + uri.getPort();
+        return limiters.computeIfAbsent(host, key -> new AdaptiveConcurrencyLimiter(key,
+                Settings.getInt("remote.initialLimit", Constants.DEFAULT_REMOTE_INITIAL_LIMIT),
+                1,
+                Settings.getInt("remote.maxLimit", Constants.DEFAULT_REMOTE_MAX_LIMIT),
+                Settings.getInt("remote.maxQueued", Constants.DEFAULT_REMOTE_MAX_QUEUED),
+                Settings.getInt("remote.maxWaitMillis", Constants.DEFAULT_REMOTE_MAX_WAIT_MILLIS)));
+    }
+
+    /**
+     * @return the current state of every limiter, keyed by host
+     */
+    public static Map<String, AdaptiveConcurrencyLimiter.Snapshot> snapshot() {
+        Map<String, AdaptiveConcurrencyLimiter.Snapshot> snapshot = new TreeMap<>();
+        limiters.forEach((host, limiter) -> snapshot.put(host, limiter.snapshot()));
+        return snapshot;
+    }
+}
@@ -0,0 +1,66 @@
+package io.bankbridge.remote;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes a stream through until a maximum number of bytes has been read and fails as soon as the stream holds more,
+ * so a body can be parsed straight from the connection without trusting the sender about its size.
+ */
+public final class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private long count;
+
+    /**
+     * @param in       the stream to read
+     * @param maxBytes the number of bytes the stream may hold
+     */
+    public SizeLimitedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0)
+            count(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        // read at most one byte past the limit, enough to notice an oversized stream
+        int n = super.read(buffer, offset, (int) Math.min(length, maxBytes - count + 1));
+        if (n > 0)
+            count(n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(Math.min(n, maxBytes - count + 1));
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return the number of bytes read so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    private void count(long n) throws PayloadTooLargeException {
+        count += n;
+        if (count > maxBytes)
+            throw new PayloadTooLargeException(maxBytes);
+    }
+}
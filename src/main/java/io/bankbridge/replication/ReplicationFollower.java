@@ -0,0 +1,131 @@
+package io.bankbridge.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.bankbridge.model.BankModel;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The follower side of replication: pulls the banks from the leader's snapshot route, a full snapshot first and
+ * deltas after that, and hands them to the local store. The leader counts as gone once no pull has succeeded
+ * for the failover time, so the follower can fall back to fetching on its own.
+ * <p>
+ * Only the remote v2 banks are replicated. Every instance loads the v1 banks itself, and a v1 change is applied by
+ * the instance that receives it alone, so writers must send v1 changes to every instance.
+ */
+public class ReplicationFollower {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    /**
+     * Stores a bank received from the leader.
+     */
+    public interface Applier {
+
+        /**
+         * @param provider       the provider name
+         * @param bankModel      the bank the provider served
+         * @param fetchedAtNanos when the leader fetched the bank, in local {@link System#nanoTime()} terms
+         */
+        void apply(String provider, BankModel bankModel, long fetchedAtNanos);
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String snapshotUrl;
+    private final long failoverNanos;
+    private final int timeoutMillis;
+    private final Applier applier;
+    private final CloseableHttpClient httpClient;
+
+    private String epoch;
+    private long version;
+    private volatile long lastSuccessNanos = Long.MIN_VALUE;
+
+    /**
+     * @param leaderUrl      the base URL of the leader, e.g. {@code http://localhost:8080}
+     * @param failoverMillis how long the leader may be unreachable before it counts as gone
+     * @param applier        stores the received banks
+     * @param httpClient     the client used to call the leader
+     */
+    public ReplicationFollower(String leaderUrl, long failoverMillis, Applier applier, CloseableHttpClient httpClient) {
+        this.snapshotUrl = leaderUrl.replaceAll("/+$", "") + "/replication/snapshot";
+        this.failoverNanos = TimeUnit.MILLISECONDS.toNanos(failoverMillis);
+        this.timeoutMillis = (int) Math.max(1, failoverMillis / 2);
+        this.applier = applier;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Pulls the changes from the leader once.
+     *
+     * @return true if the leader answered and its changes were applied
+     */
+    public synchronized boolean pull() {
+        String url = snapshotUrl + "?since=" + version + (epoch != null ? "&epoch=" + epoch : "");
+        HttpGet httpget = new HttpGet(url);
+        httpget.setConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setConnectTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build());
+        try (CloseableHttpResponse response = httpClient.execute(httpget)) {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.OK_200) {
+                EntityUtils.consume(response.getEntity());
+                logger.warn("Leader answered {} to {}", response.getStatusLine().getStatusCode(), url);
+                return false;
+            }
+            ReplicationSnapshot snapshot;
+            try (InputStream in = response.getEntity().getContent()) {
+                snapshot = objectMapper.readValue(in, ReplicationSnapshot.class);
+            }
+            long now = System.nanoTime();
+            for (Map.Entry<String, ReplicationSnapshot.ReplicatedBank> entry : snapshot.getBanks().entrySet()) {
+                applier.apply(entry.getKey(), entry.getValue().getBank(),
+                        now - TimeUnit.MILLISECONDS.toNanos(entry.getValue().getAgeMillis()));
+            }
+            if (snapshot.isFull())
+                logger.info("Received full snapshot of {} banks, version {}", snapshot.getBanks().size(),
+                        snapshot.getVersion());
+            epoch = snapshot.getEpoch();
+            version = snapshot.getVersion();
+            lastSuccessNanos = now;
+            return true;
+        } catch (Exception e) {
+            logger.warn("Pulling snapshot from {} failed: {}", url, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Pulls from the leader at a fixed delay on a daemon thread.
+     *
+     * @param pollMillis the delay between two pulls
+     */
+    public void start(long pollMillis) {
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replication-follower");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::pull, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if a pull succeeded within the failover time
+     */
+    public boolean isLeaderAvailable() {
+        return lastSuccessNanos != Long.MIN_VALUE && System.nanoTime() - lastSuccessNanos < failoverNanos;
+    }
+}
@@ -0,0 +1,72 @@
+package io.bankbridge.replication;
+
+import io.bankbridge.model.BankModel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The leader side of replication: the latest fetched bank of every provider, each stamped with the version of the
+ * fetch. As every provider is kept once at its latest version, the changes since any version can always be served
+ * as a delta, in time proportional to the number of changes.
+ */
+public class ReplicationLog {
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final NavigableMap<Long, String> providersByVersion = new TreeMap<>();
+    private long version;
+
+    /**
+     * Records a fetched bank.
+     *
+     * @param provider       the provider name
+     * @param bankModel      the bank the provider served
+     * @param fetchedAtNanos when the bank was fetched, in {@link System#nanoTime()} terms
+     */
+    public synchronized void record(String provider, BankModel bankModel, long fetchedAtNanos) {
+        Entry previous = entries.put(provider, new Entry(bankModel, fetchedAtNanos, ++version));
+        if (previous != null)
+            providersByVersion.remove(previous.version);
+        providersByVersion.put(version, provider);
+    }
+
+    /**
+     * Builds the snapshot a follower needs to catch up.
+     *
+     * @param epoch the epoch the follower's version belongs to, null if it has nothing yet
+     * @param since the version the follower has
+     * @return the banks fetched after that version, or every bank if the follower's version is from another epoch
+     */
+    public synchronized ReplicationSnapshot since(String epoch, long since) {
+        ReplicationSnapshot snapshot = new ReplicationSnapshot();
+        snapshot.setEpoch(this.epoch);
+        snapshot.setVersion(version);
+        snapshot.setFull(!this.epoch.equals(epoch) || since <= 0);
+
+        long now = System.nanoTime();
+        for (String provider : providersByVersion.tailMap(snapshot.isFull() ? 0 : since, false).values()) {
+            Entry entry = entries.get(provider);
+            snapshot.getBanks().put(provider, new ReplicationSnapshot.ReplicatedBank(entry.bankModel,
+                    TimeUnit.NANOSECONDS.toMillis(now - entry.fetchedAtNanos)));
+        }
+        return snapshot;
+    }
+
+    private static final class Entry {
+        final BankModel bankModel;
+        final long fetchedAtNanos;
+        final long version;
+
+        Entry(BankModel bankModel, long fetchedAtNanos, long version) {
+            this.bankModel = bankModel;
+            this.fetchedAtNanos = fetchedAtNanos;
+            this.version = version;
+        }
+    }
+}
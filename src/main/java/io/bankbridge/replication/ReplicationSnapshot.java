@@ -0,0 +1,90 @@
+package io.bankbridge.replication;
+
+import io.bankbridge.model.BankModel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remote banks as sent from a leader to its followers: either every bank the leader holds, or only the banks
+ * fetched since the version the follower already has.
+ */
+public class ReplicationSnapshot {
+
+    /**
+     * Identifies one lifetime of the leader's log; versions are only comparable within the same epoch.
+     */
+    private String epoch;
+
+    private long version;
+
+    private boolean full;
+
+    private Map<String, ReplicatedBank> banks = new LinkedHashMap<>();
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(String epoch) {
+        this.epoch = epoch;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+
+    public Map<String, ReplicatedBank> getBanks() {
+        return banks;
+    }
+
+    public void setBanks(Map<String, ReplicatedBank> banks) {
+        this.banks = banks;
+    }
+
+    /**
+     * The bank of one provider with the time since the leader fetched it.
+     */
+    public static class ReplicatedBank {
+
+        private BankModel bank;
+
+        private long ageMillis;
+
+        public ReplicatedBank() {
+        }
+
+        public ReplicatedBank(BankModel bank, long ageMillis) {
+            this.bank = bank;
+            this.ageMillis = ageMillis;
+        }
+
+        public BankModel getBank() {
+            return bank;
+        }
+
+        public void setBank(BankModel bank) {
+            this.bank = bank;
+        }
+
+        public long getAgeMillis() {
+            return ageMillis;
+        }
+
+        public void setAgeMillis(long ageMillis) {
+            this.ageMillis = ageMillis;
+        }
+    }
+}
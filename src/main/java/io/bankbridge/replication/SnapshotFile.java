@@ -0,0 +1,108 @@
+package io.bankbridge.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the full snapshot of a {@link ReplicationLog} in a local file, so a restarted instance can serve the banks it
+ * had before the restart while it fetches fresh ones. Changes are written at most once per write interval, to a
+ * temporary file that replaces the previous one atomically, so a crash never leaves a partial snapshot behind.
+ * The ages in the file are those at write time; loading adds the time the file has been lying around.
+ */
+public class SnapshotFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotFile.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path file;
+    private final ReplicationLog replicationLog;
+
+    private volatile boolean dirty;
+
+    /**
+     * @param file           the snapshot file
+     * @param replicationLog the log holding the banks to persist
+     */
+    public SnapshotFile(Path file, ReplicationLog replicationLog) {
+        this.file = file;
+        this.replicationLog = replicationLog;
+    }
+
+    /**
+     * Reads the snapshot written by a previous run.
+     *
+     * @return the snapshot with the ages of its banks as of now, or null if there is no readable snapshot
+     */
+    public ReplicationSnapshot load() {
+        if (!Files.isRegularFile(file))
+            return null;
+        try {
+            ReplicationSnapshot snapshot = objectMapper.readValue(file.toFile(), ReplicationSnapshot.class);
+            long fileAgeMillis = Math.max(0, System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis());
+            for (ReplicationSnapshot.ReplicatedBank bank : snapshot.getBanks().values())
+                bank.setAgeMillis(bank.getAgeMillis() + fileAgeMillis);
+            return snapshot;
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable snapshot file {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Notes that the log changed, so the next write interval persists it.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Writes the current snapshot of the log.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void write() throws IOException {
+        // cleared before taking the snapshot, so changes made while writing are persisted next time
+        dirty = false;
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temporary.toFile(), replicationLog.since(null, 0));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            // the changes are not on disk yet, retry at the next interval
+            dirty = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Starts writing the snapshot in the background whenever the log changed.
+     *
+     * @param intervalMillis the time between two writes
+     */
+    public void start(long intervalMillis) {
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(() -> {
+            if (!dirty)
+                return;
+            try {
+                write();
+            } catch (IOException | RuntimeException e) {
+                // an exception escaping the task would cancel every later write
+                logger.warn("Writing snapshot file {} failed: {}", file, e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+}
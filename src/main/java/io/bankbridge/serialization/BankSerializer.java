@@ -0,0 +1,119 @@
+package io.bankbridge.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.Constants;
+import spark.Request;
+import spark.utils.StringUtils;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes banks with a fixed set of fields, the projection requested through the {@code fields} parameter.
+ * A serializer is compiled once per view and projection into a plain array of field writers and cached,
+ * so a request neither resolves bean properties nor evaluates view or filter annotations.
+ */
+public final class BankSerializer {
+
+    private static final Map<String, BankSerializer> compiled = new ConcurrentHashMap<>();
+
+    private final String key;
+    private final ProjectedField[] fields;
+
+    private BankSerializer(String key, ProjectedField[] fields) {
+        this.key = key;
+        this.fields = fields;
+    }
+
+    /**
+     * Returns the serializer for the projection requested in the {@code fields} parameter.
+     *
+     * @param request the request object, carrying the optional comma-separated field names
+     * @param view    the Jackson view of the API version, limiting the fields that can be selected
+     * @return the compiled serializer, writing every field of the view if no projection was requested
+     * @throws IllegalArgumentException if a requested field does not exist in the view
+     */
+    public static BankSerializer forRequest(Request request, Class<?> view) {
+        return of(view, request.queryParams(Constants.QUERY_PARAM_FIELDS));
+    }
+
+    /**
+     * Returns the serializer for the given projection.
+     *
+     * @param view        the Jackson view of the API version
+     * @param fieldsParam comma-separated field names, blank for every field of the view
+     * @return the compiled serializer
+     * @throws IllegalArgumentException if a requested field does not exist in the view
+     */
+    public static BankSerializer of(Class<?> view, String fieldsParam) {
+        Set<ProjectedField> selected = EnumSet.noneOf(ProjectedField.class);
+        if (StringUtils.isBlank(fieldsParam)) {
+            for (ProjectedField field : ProjectedField.values()) {
+                if (field.isIn(view))
+                    selected.add(field);
+            }
+        } else {
+            for (String name : fieldsParam.split(",")) {
+                selected.add(resolve(view, name.trim()));
+            }
+        }
+
+        StringBuilder key = new StringBuilder(view.getSimpleName());
+        for (ProjectedField field : selected) {
+            key.append(':').append(field.getName());
+        }
+        // the key is normalized, so the number of compiled serializers is bounded by the subsets of view fields
+        return compiled.computeIfAbsent(key.toString(),
+                k -> new BankSerializer(k, selected.toArray(new ProjectedField[0])));
+    }
+
+    private static ProjectedField resolve(Class<?> view, String name) {
+        for (ProjectedField field : ProjectedField.values()) {
+            if (field.getName().equals(name) && field.isIn(view))
+                return field;
+        }
+        throw new IllegalArgumentException("Unknown field: " + name);
+    }
+
+    /**
+     * @return a key identifying the view and projection, usable in cache keys
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Writes a single bank as an object.
+     *
+     * @param generator the generator to write to, of any Jackson data format
+     * @param bankModel the bank to write
+     * @throws IOException if writing fails
+     */
+    public void write(JsonGenerator generator, BankModel bankModel) throws IOException {
+        generator.writeStartObject();
+        for (ProjectedField field : fields) {
+            field.write(generator, bankModel);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the banks as an array.
+     *
+     * @param generator  the generator to write to, of any Jackson data format
+     * @param bankModels the banks to write
+     * @throws IOException if writing fails
+     */
+    public void writeList(JsonGenerator generator, List<BankModel> bankModels) throws IOException {
+        generator.writeStartArray();
+        for (BankModel bankModel : bankModels) {
+            write(generator, bankModel);
+        }
+        generator.writeEndArray();
+    }
+}
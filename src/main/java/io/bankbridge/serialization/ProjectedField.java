@@ -0,0 +1,92 @@
+package io.bankbridge.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.Views;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Bank fields that can be selected with the {@code fields} parameter, in the order they are written.
+ * Each field knows the views it belongs to and writes itself with the same rules as the Jackson annotations on
+ * {@link BankModel}: auth and products are left out when null.
+ */
+enum ProjectedField {
+
+    BIC("bic", Views.Cache.class, Views.RemoteCall.class) {
+        @Override
+        void write(JsonGenerator generator, BankModel bankModel) throws IOException {
+            generator.writeStringField(getName(), bankModel.getBic());
+        }
+    },
+
+    NAME("name", Views.Cache.class, Views.RemoteCall.class) {
+        @Override
+        void write(JsonGenerator generator, BankModel bankModel) throws IOException {
+            generator.writeStringField(getName(), bankModel.getName());
+        }
+    },
+
+    COUNTRY_CODE("countryCode", Views.Cache.class, Views.RemoteCall.class) {
+        @Override
+        void write(JsonGenerator generator, BankModel bankModel) throws IOException {
+            generator.writeStringField(getName(), bankModel.getCountryCode());
+        }
+    },
+
+    AUTH("auth", Views.RemoteCall.class) {
+        @Override
+        void write(JsonGenerator generator, BankModel bankModel) throws IOException {
+            if (bankModel.getAuth() != null)
+                generator.writeStringField(getName(), bankModel.getAuth());
+        }
+    },
+
+    PRODUCTS("products", Views.Cache.class) {
+        @Override
+        void write(JsonGenerator generator, BankModel bankModel) throws IOException {
+            List<?> products = bankModel.getProducts();
+            if (products == null)
+                return;
+            generator.writeArrayFieldStart(getName());
+            for (Object product : products) {
+                generator.writeString(String.valueOf(product));
+            }
+            generator.writeEndArray();
+        }
+    };
+
+    private final String name;
+    private final Class<?>[] views;
+
+    ProjectedField(String name, Class<?>... views) {
+        this.name = name;
+        this.views = views;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @param view the Jackson view of the response
+     * @return true if the field is part of the view
+     */
+    boolean isIn(Class<?> view) {
+        for (Class<?> fieldView : views) {
+            if (fieldView == view)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the field of the bank into the current JSON object.
+     *
+     * @param generator the generator positioned inside the bank object
+     * @param bankModel the bank to read
+     * @throws IOException if writing fails
+     */
+    abstract void write(JsonGenerator generator, BankModel bankModel) throws IOException;
+}
@@ -0,0 +1,124 @@
+package io.bankbridge.serialization;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.Constants;
+import spark.Request;
+import spark.Response;
+import spark.utils.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Encodings the bank lists can be returned in, chosen through the Accept header.
+ * All formats are written by the same {@link BankSerializer}, so views and projections apply identically.
+ */
+public enum ResponseFormat {
+
+    JSON("application/json", new JsonFactory()),
+    CBOR("application/cbor", new CBORFactory()),
+    SMILE("application/x-jackson-smile", new SmileFactory());
+
+    private final String contentType;
+    private final JsonFactory factory;
+
+    ResponseFormat(String contentType, JsonFactory factory) {
+        this.contentType = contentType;
+        this.factory = factory;
+    }
+
+    /**
+     * Picks the format for the request, see {@link #negotiate(String)}, and marks the response as varying by the
+     * Accept header, so shared caches do not hand one client's format to another.
+     *
+     * @param request  the request object carrying the Accept header
+     * @param response the response object receiving the Vary header
+     * @return the preferred supported format, JSON if the client did not ask for a supported one
+     */
+    public static ResponseFormat negotiate(Request request, Response response) {
+        response.header(Constants.HEADER_VARY, Constants.HEADER_ACCEPT);
+        return negotiate(request.headers(Constants.HEADER_ACCEPT));
+    }
+
+    /**
+     * Picks the format the client prefers, honouring quality values; ties go to the first listed media type.
+     *
+     * @param accept the Accept header, can be blank
+     * @return the preferred supported format, JSON if the client did not ask for a supported one
+     */
+    public static ResponseFormat negotiate(String accept) {
+        if (StringUtils.isBlank(accept))
+            return JSON;
+
+        ResponseFormat best = JSON;
+        double bestQuality = 0;
+        for (String mediaRange : accept.split(",")) {
+            String[] parts = mediaRange.split(";");
+            ResponseFormat format = forMediaType(parts[0].trim());
+            if (format == null)
+                continue;
+            double quality = quality(parts);
+            if (quality > bestQuality) {
+                best = format;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    private static ResponseFormat forMediaType(String mediaType) {
+        for (ResponseFormat format : values()) {
+            if (format.contentType.equalsIgnoreCase(mediaType))
+                return format;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the quality value of one element of an Accept or Accept-Encoding header.
+     *
+     * @param parts the element split at ';', the media range or coding first
+     * @return the quality value, 1 if the element has none and 0 if it cannot be read
+     */
+    public static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @return the Content-Type of responses in this format
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Encodes the banks as an array in this format.
+     *
+     * @param serializer the serializer selecting the fields
+     * @param bankModels the banks to encode
+     * @return the encoded array
+     * @throws IOException if encoding fails
+     */
+    public byte[] encode(BankSerializer serializer, List<BankModel> bankModels) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + bankModels.size() * 96);
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            serializer.writeList(generator, bankModels);
+        }
+        return out.toByteArray();
+    }
+}
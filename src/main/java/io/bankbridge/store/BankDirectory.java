@@ -0,0 +1,223 @@
+package io.bankbridge.store;
+
+import io.bankbridge.model.BankModel;
+import io.bankbridge.query.SortSpec;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * One immutable version of the cached banks together with every structure derived from them: the banks in load
+ * order, by BIC, per country code and in each sort order requested so far.
+ * Upserts and removals return a new version in O(log n) per structure by sharing all unchanged nodes with this one,
+ * so readers holding a version see a consistent view without locks.
+ * <p>
+ * Banks keep the sequence number they were first stored with. It is the tie-break of every ordering, so banks that
+ * compare equal keep their load order, as with a stable sort.
+ */
+public final class BankDirectory {
+
+    private static final BankDirectory EMPTY = new BankDirectory(0, 0,
+            PersistentTreap.empty(Comparator.naturalOrder()), PersistentTreap.empty(Comparator.naturalOrder()),
+            PersistentTreap.empty(Comparator.naturalOrder()), Collections.emptyMap());
+
+    private final long version;
+    private final long nextSeq;
+    private final PersistentTreap<String, Entry> byBic;
+    private final PersistentTreap<Long, BankModel> bySeq;
+    private final PersistentTreap<String, PersistentTreap<Long, BankModel>> byCountry;
+    private final Map<String, SortedIndex> sortedIndexes;
+
+    private BankDirectory(long version, long nextSeq, PersistentTreap<String, Entry> byBic,
+                          PersistentTreap<Long, BankModel> bySeq,
+                          PersistentTreap<String, PersistentTreap<Long, BankModel>> byCountry,
+                          Map<String, SortedIndex> sortedIndexes) {
+        this.version = version;
+        this.nextSeq = nextSeq;
+        this.byBic = byBic;
+        this.bySeq = bySeq;
+        this.byCountry = byCountry;
+        this.sortedIndexes = sortedIndexes;
+    }
+
+    /**
+     * @return the directory without banks, at version 0
+     */
+    public static BankDirectory empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return the version, increased by every change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of banks
+     */
+    public int size() {
+        return byBic.size();
+    }
+
+    /**
+     * @param bic the BIC
+     * @return the bank with the BIC, or null if absent
+     */
+    public BankModel get(String bic) {
+        Entry entry = byBic.get(bic);
+        return entry != null ? entry.bankModel : null;
+    }
+
+    /**
+     * @return every bank in load order, banks added later at the end
+     */
+    public Iterable<BankModel> all() {
+        return bySeq.values();
+    }
+
+    /**
+     * @param bic the BIC to start after, null to start at the first bank
+     * @return the banks in ascending BIC order
+     */
+    public Iterable<BankModel> byBicAfter(String bic) {
+        Iterable<Entry> entries = bic == null ? byBic.values() : byBic.valuesAfter(bic);
+        return () -> new Iterator<BankModel>() {
+            private final Iterator<Entry> iterator = entries.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public BankModel next() {
+                return iterator.next().bankModel;
+            }
+        };
+    }
+
+    /**
+     * @param countryCode the country code
+     * @return the banks of the country in load order
+     */
+    public Iterable<BankModel> byCountry(String countryCode) {
+        PersistentTreap<Long, BankModel> banks = byCountry.get(countryCode);
+        return banks != null ? banks.values() : Collections.emptyList();
+    }
+
+    /**
+     * @param sortSpec the ordering
+     * @return every bank in the given order, or null if no index for the ordering has been built in this version
+     */
+    public Iterable<BankModel> sorted(SortSpec sortSpec) {
+        SortedIndex index = sortedIndexes.get(sortSpec.getKey());
+        return index != null ? index.banks.values() : null;
+    }
+
+    /**
+     * Builds the index of an ordering, in O(n log n). The index is maintained by all later changes.
+     *
+     * @param sortSpec the ordering
+     * @return this version with the index added
+     */
+    public BankDirectory withSortedIndex(SortSpec sortSpec) {
+        if (sortedIndexes.containsKey(sortSpec.getKey()))
+            return this;
+        SortedIndex index = new SortedIndex(sortSpec);
+        for (Entry entry : byBic.values())
+            index = index.put(entry);
+        Map<String, SortedIndex> indexes = new HashMap<>(sortedIndexes);
+        indexes.put(sortSpec.getKey(), index);
+        return new BankDirectory(version, nextSeq, byBic, bySeq, byCountry, indexes);
+    }
+
+    /**
+     * Adds a bank or replaces the bank with the same BIC, which keeps its position in load order.
+     *
+     * @param bankModel the bank, with a BIC
+     * @return the next version
+     */
+    public BankDirectory upsert(BankModel bankModel) {
+        Entry previous = byBic.get(bankModel.getBic());
+        BankDirectory removed = previous != null ? without(previous) : this;
+        Entry entry = new Entry(previous != null ? previous.seq : nextSeq, bankModel);
+
+        PersistentTreap<String, PersistentTreap<Long, BankModel>> countries = removed.byCountry;
+        if (bankModel.getCountryCode() != null) {
+            PersistentTreap<Long, BankModel> country = countries.get(bankModel.getCountryCode());
+            if (country == null)
+                country = PersistentTreap.empty(Comparator.naturalOrder());
+            countries = countries.put(bankModel.getCountryCode(), country.put(entry.seq, bankModel));
+        }
+        Map<String, SortedIndex> indexes = new HashMap<>(removed.sortedIndexes);
+        indexes.replaceAll((key, index) -> index.put(entry));
+
+        return new BankDirectory(version + 1, previous != null ? nextSeq : nextSeq + 1,
+                removed.byBic.put(bankModel.getBic(), entry), removed.bySeq.put(entry.seq, bankModel),
+                countries, indexes);
+    }
+
+    /**
+     * @param bic the BIC of the bank to remove
+     * @return the next version, or this version if there is no bank with the BIC
+     */
+    public BankDirectory remove(String bic) {
+        Entry previous = byBic.get(bic);
+        if (previous == null)
+            return this;
+        BankDirectory removed = without(previous);
+        return new BankDirectory(version + 1, nextSeq, removed.byBic, removed.bySeq, removed.byCountry,
+                removed.sortedIndexes);
+    }
+
+    private BankDirectory without(Entry entry) {
+        PersistentTreap<String, PersistentTreap<Long, BankModel>> countries = byCountry;
+        String countryCode = entry.bankModel.getCountryCode();
+        if (countryCode != null) {
+            PersistentTreap<Long, BankModel> country = countries.get(countryCode).remove(entry.seq);
+            countries = country.size() > 0 ? countries.put(countryCode, country) : countries.remove(countryCode);
+        }
+        Map<String, SortedIndex> indexes = new HashMap<>(sortedIndexes);
+        indexes.replaceAll((key, index) -> index.remove(entry));
+        return new BankDirectory(version, nextSeq, byBic.remove(entry.bankModel.getBic()), bySeq.remove(entry.seq),
+                countries, indexes);
+    }
+
+    private static final class Entry {
+        final long seq;
+        final BankModel bankModel;
+
+        Entry(long seq, BankModel bankModel) {
+            this.seq = seq;
+            this.bankModel = bankModel;
+        }
+    }
+
+    private static final class SortedIndex {
+        final SortSpec sortSpec;
+        final PersistentTreap<Entry, BankModel> banks;
+
+        SortedIndex(SortSpec sortSpec) {
+            this(sortSpec, PersistentTreap.empty(Comparator.<Entry, BankModel>comparing(entry -> entry.bankModel,
+                    sortSpec.getComparator()).thenComparingLong(entry -> entry.seq)));
+        }
+
+        private SortedIndex(SortSpec sortSpec, PersistentTreap<Entry, BankModel> banks) {
+            this.sortSpec = sortSpec;
+            this.banks = banks;
+        }
+
+        SortedIndex put(Entry entry) {
+            return new SortedIndex(sortSpec, banks.put(entry, entry.bankModel));
+        }
+
+        SortedIndex remove(Entry entry) {
+            return new SortedIndex(sortSpec, banks.remove(entry));
+        }
+    }
+}
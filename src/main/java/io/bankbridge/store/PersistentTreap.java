@@ -0,0 +1,196 @@
+package io.bankbridge.store;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable sorted map. Every update returns a new map that shares all nodes but the O(log n) copied ones on the path
+ * to the changed key, so versions can be published to readers without locks and without copying the whole map.
+ * Balance is kept with random node priorities, as in a treap.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class PersistentTreap<K, V> {
+
+    private final Comparator<? super K> comparator;
+    private final Node<K, V> root;
+
+    private PersistentTreap(Comparator<? super K> comparator, Node<K, V> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    /**
+     * @param comparator the ordering of the keys
+     * @param <K>        the key type
+     * @param <V>        the value type
+     * @return an empty map
+     */
+    public static <K, V> PersistentTreap<K, V> empty(Comparator<? super K> comparator) {
+        return new PersistentTreap<>(comparator, null);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return Node.size(root);
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value of the key, or null if absent
+     */
+    public V get(K key) {
+        Node<K, V> node = root;
+        while (node != null) {
+            int c = comparator.compare(key, node.key);
+            if (c == 0)
+                return node.value;
+            node = c < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * @param key   the key
+     * @param value the value, replacing the current one of the key
+     * @return the map with the entry
+     */
+    public PersistentTreap<K, V> put(K key, V value) {
+        return new PersistentTreap<>(comparator, insert(root, key, value));
+    }
+
+    /**
+     * @param key the key
+     * @return the map without the key, this map if the key is absent
+     */
+    public PersistentTreap<K, V> remove(K key) {
+        Node<K, V> newRoot = delete(root, key);
+        return newRoot == root ? this : new PersistentTreap<>(comparator, newRoot);
+    }
+
+    /**
+     * @return the values in key order
+     */
+    public Iterable<V> values() {
+        return () -> new ValueIterator<>(root, null, comparator);
+    }
+
+    /**
+     * @param key the key to start after, need not be present
+     * @return the values of the keys greater than the given one, in key order
+     */
+    public Iterable<V> valuesAfter(K key) {
+        return () -> new ValueIterator<>(root, key, comparator);
+    }
+
+    private Node<K, V> insert(Node<K, V> node, K key, V value) {
+        if (node == null)
+            return new Node<>(key, value, ThreadLocalRandom.current().nextInt(), null, null);
+        int c = comparator.compare(key, node.key);
+        if (c == 0)
+            return new Node<>(key, value, node.priority, node.left, node.right);
+        if (c < 0) {
+            Node<K, V> left = insert(node.left, key, value);
+            if (left.priority > node.priority)
+                // rotate right
+                return left.with(left.left, node.with(left.right, node.right));
+            return node.with(left, node.right);
+        }
+        Node<K, V> right = insert(node.right, key, value);
+        if (right.priority > node.priority)
+            // rotate left
+            return right.with(node.with(node.left, right.left), right.right);
+        return node.with(node.left, right);
+    }
+
+    private Node<K, V> delete(Node<K, V> node, K key) {
+        if (node == null)
+            return null;
+        int c = comparator.compare(key, node.key);
+        if (c == 0)
+            return merge(node.left, node.right);
+        if (c < 0) {
+            Node<K, V> left = delete(node.left, key);
+            return left == node.left ? node : node.with(left, node.right);
+        }
+        Node<K, V> right = delete(node.right, key);
+        return right == node.right ? node : node.with(node.left, right);
+    }
+
+    private static <K, V> Node<K, V> merge(Node<K, V> left, Node<K, V> right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        if (left.priority > right.priority)
+            return left.with(left.left, merge(left.right, right));
+        return right.with(merge(left, right.left), right.right);
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final int priority;
+        final Node<K, V> left;
+        final Node<K, V> right;
+        final int size;
+
+        Node(K key, V value, int priority, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+
+        Node<K, V> with(Node<K, V> left, Node<K, V> right) {
+            return new Node<>(key, value, priority, left, right);
+        }
+
+        static int size(Node<?, ?> node) {
+            return node == null ? 0 : node.size;
+        }
+    }
+
+    /**
+     * In-order traversal with an explicit stack of the O(log n) nodes on the current path.
+     */
+    private static final class ValueIterator<K, V> implements Iterator<V> {
+        private final Deque<Node<K, V>> stack = new ArrayDeque<>();
+
+        ValueIterator(Node<K, V> root, K after, Comparator<? super K> comparator) {
+            Node<K, V> node = root;
+            while (node != null) {
+                if (after == null || comparator.compare(node.key, after) > 0) {
+                    stack.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public V next() {
+            if (stack.isEmpty())
+                throw new NoSuchElementException();
+            Node<K, V> node = stack.pop();
+            for (Node<K, V> next = node.right; next != null; next = next.left)
+                stack.push(next);
+            return node.value;
+        }
+    }
+}
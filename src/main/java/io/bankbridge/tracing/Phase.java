@@ -0,0 +1,37 @@
+package io.bankbridge.tracing;
+
+/**
+ * Phases of a request recorded as {@link PhaseEvent}s.
+ */
+public enum Phase {
+
+    /**
+     * Compiling the query, the projection and the response format from the request parameters.
+     */
+    PARSE,
+
+    /**
+     * Looking up an already encoded response.
+     */
+    RESPONSE_CACHE,
+
+    /**
+     * Producing the banks of the result from the cache: scanning or index lookups, filtering and pagination.
+     */
+    EXECUTE,
+
+    /**
+     * Waiting for the remote providers and collecting their banks into the result.
+     */
+    REMOTE_FETCH,
+
+    /**
+     * Encoding the result in the negotiated format.
+     */
+    SERIALIZE,
+
+    /**
+     * Streaming an export, from the first bank read to the last one written.
+     */
+    EXPORT
+}
@@ -0,0 +1,65 @@
+package io.bankbridge.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning one {@link Phase} of a request.
+ */
+@Name("io.bankbridge.Phase")
+@Label("Request Phase")
+@Category("Bank Bridge")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+
+    @Label("Request Id")
+    String requestId;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Detail")
+    @Description("How the phase was carried out, e.g. the access path of a query or whether the response cache hit")
+    String detail;
+
+    @Label("Banks")
+    @Description("Number of banks produced by the phase, -1 if not applicable")
+    int banks = -1;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes = -1;
+
+    PhaseEvent(String requestId, Phase phase) {
+        this.requestId = requestId;
+        this.phase = phase.name();
+    }
+
+    /**
+     * Ends the phase and records it.
+     */
+    public void done() {
+        commit();
+    }
+
+    /**
+     * Ends the phase and records it with its outcome.
+     *
+     * @param detail how the phase was carried out, can be null
+     * @param banks  the number of banks produced
+     * @param bytes  the number of bytes produced, -1 if not applicable
+     */
+    public void done(String detail, int banks, long bytes) {
+        if (shouldCommit()) {
+            this.detail = detail;
+            this.banks = banks;
+            this.bytes = bytes;
+        }
+        commit();
+    }
+}
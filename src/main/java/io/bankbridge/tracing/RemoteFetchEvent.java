@@ -0,0 +1,75 @@
+package io.bankbridge.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning one call to a remote bank provider, from sending the request to parsing the bank.
+ */
+@Name("io.bankbridge.RemoteFetch")
+@Label("Remote Fetch")
+@Category("Bank Bridge")
+@StackTrace(false)
+public class RemoteFetchEvent extends Event {
+
+    @Label("Request Id")
+    String requestId;
+
+    @Label("Provider")
+    String provider;
+
+    @Label("URL")
+    String url;
+
+    @Label("Status Code")
+    int statusCode;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Success")
+    boolean success;
+
+    /**
+     * Starts timing a call.
+     *
+     * @param requestId the request the call is made for
+     * @param provider  the provider name
+     * @param url       the remote URL
+     */
+    public RemoteFetchEvent(String requestId, String provider, String url) {
+        this.requestId = requestId;
+        this.provider = provider;
+        this.url = url;
+        begin();
+    }
+
+    /**
+     * @param statusCode the HTTP status the provider answered with
+     */
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @param bytes the size of the response body read
+     */
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Ends the call and records it.
+     *
+     * @param success false if the call failed or the provider answered with an error
+     */
+    public void done(boolean success) {
+        this.success = success;
+        commit();
+    }
+}
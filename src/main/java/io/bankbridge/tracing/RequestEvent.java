@@ -0,0 +1,32 @@
+package io.bankbridge.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning a whole request, from the first filter to the last one.
+ */
+@Name("io.bankbridge.Request")
+@Label("Request")
+@Category("Bank Bridge")
+@StackTrace(false)
+class RequestEvent extends Event {
+
+    @Label("Request Id")
+    String requestId;
+
+    @Label("Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    @Label("Query")
+    String query;
+
+    @Label("Status Code")
+    int statusCode;
+}
@@ -0,0 +1,93 @@
+package io.bankbridge.tracing;
+
+import io.bankbridge.model.Constants;
+import spark.Request;
+import spark.Response;
+import spark.utils.StringUtils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Correlates the Flight Recorder events of a request by a request id, which is returned to the client in the
+ * {@code X-Request-Id} header. A request id sent by the client is kept, so traces can be joined across services.
+ * <p>
+ * The events are always emitted; they cost next to nothing until a recording enables them, e.g. with
+ * {@code -XX:StartFlightRecording} or {@code jcmd <pid> JFR.start}.
+ */
+public final class Tracing {
+
+    private static final String ATTR_REQUEST_ID = "tracing.requestId";
+    private static final String ATTR_REQUEST_EVENT = "tracing.requestEvent";
+
+    private static final Pattern VALID_REQUEST_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    /**
+     * Distinguishes the ids of this process from the ones of other instances, the counter makes them unique.
+     */
+    private static final String ID_PREFIX = Long.toHexString(ThreadLocalRandom.current().nextLong() >>> 16);
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private Tracing() {
+    }
+
+    /**
+     * Assigns the request id and starts the request event. Meant to run as the first before filter.
+     *
+     * @param request  the incoming request
+     * @param response the response, receiving the request id header
+     */
+    public static void start(Request request, Response response) {
+        String requestId = request.headers(Constants.HEADER_REQUEST_ID);
+        if (StringUtils.isBlank(requestId) || !VALID_REQUEST_ID.matcher(requestId).matches())
+            requestId = ID_PREFIX + "-" + Long.toHexString(sequence.incrementAndGet());
+        request.attribute(ATTR_REQUEST_ID, requestId);
+        response.header(Constants.HEADER_REQUEST_ID, requestId);
+
+        RequestEvent event = new RequestEvent();
+        if (event.isEnabled()) {
+            event.requestId = requestId;
+            event.method = request.requestMethod();
+            event.path = request.pathInfo();
+            event.query = request.queryString();
+            event.begin();
+            request.attribute(ATTR_REQUEST_EVENT, event);
+        }
+    }
+
+    /**
+     * Ends the request event. Meant to run as an after-after filter, so halted and failed requests are recorded too.
+     *
+     * @param request  the request
+     * @param response the response carrying the final status
+     */
+    public static void finish(Request request, Response response) {
+        RequestEvent event = request.attribute(ATTR_REQUEST_EVENT);
+        if (event != null) {
+            event.statusCode = response.raw().getStatus();
+            event.commit();
+        }
+    }
+
+    /**
+     * @param request the request
+     * @return the id assigned to the request, or null if tracing did not see the request
+     */
+    public static String requestId(Request request) {
+        return request.attribute(ATTR_REQUEST_ID);
+    }
+
+    /**
+     * Starts timing a phase of the request; the caller ends it with {@link PhaseEvent#done()}.
+     *
+     * @param requestId the request id
+     * @param phase     the phase
+     * @return the started event
+     */
+    public static PhaseEvent begin(String requestId, Phase phase) {
+        PhaseEvent event = new PhaseEvent(requestId, phase);
+        event.begin();
+        return event;
+    }
+}
@@ -2,20 +2,41 @@ package io.bankbridge;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.ServerSocket;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 import io.bankbridge.model.BankModel;
 import io.bankbridge.model.Constants;
@@ -28,8 +49,11 @@ public class BankApiTest {
 
 	@BeforeClass
     public static void setUp() throws Exception {
+		System.setProperty("bankbridge.rateLimit.apiKeys", "rate-limit-test");
+		System.setProperty("bankbridge.admin.apiKey", ADMIN_KEY);
 		Main.main(null);
 		awaitInitialization();
+		awaitReady("http://localhost:8080");
     }
 
 	@AfterClass
@@ -37,8 +61,14 @@ public class BankApiTest {
         stop();
     }
 	
+	private static final String ADMIN_KEY = "admin-test";
+
 	private String v1BanksUrl = "/v1/banks/all";
 	private String v2BanksUrl = "/v2/banks/all";
+	private String v1BatchUrl = "/v1/banks/batch";
+	private String v2BatchUrl = "/v2/banks/batch";
+	private String v1ExportUrl = "/v1/banks/export";
+	private String v2ExportUrl = "/v2/banks/export";
 	
 	@Test
 	public void testV1BanksAllSuccess() throws Exception {
@@ -90,6 +120,15 @@ public class BankApiTest {
 		AssertBanksAreEqual(expectedBanks, returnBanks);
 	}
 	
+	@Test
+	public void testV1ResponseCacheKeyNotConfusedByEncodedSeparators() throws Exception {
+		// a single country code value that reads like two conditions once decoded
+		assertEquals("[]", request(Constants.GET, v1BanksUrl + "?countryCode=CH%26name%3DBank").body);
+		TestResponse response = request(Constants.GET, v1BanksUrl + "?countryCode=CH&name=Bank");
+		assertEquals(200, response.status);
+		assertTrue(response.body.contains("Bank Dariatur"));
+	}
+
 	@Test
 	public void testV1BanksWithPageSizeFilterSuccess() throws Exception {
 		TestResponse response = request(Constants.GET, v1BanksUrl + "?page=2&size=2");
@@ -210,6 +249,906 @@ public class BankApiTest {
 		assertNotNull(response.body);
 	}
 	
+	@Test
+	public void testV1BanksBatchByQueryParamsSuccess() throws Exception {
+		TestResponse response = request(Constants.GET, v1BatchUrl + "?bic=DODEU8XXX&bic=UNKNOWNXXX&bic=CONSSWE10XXX");
+		assertEquals(200, response.status);
+		assertNotNull(response.body);
+		List<BankModel> returnBanks = new ObjectMapper().readValue(response.body,
+				new TypeReference<List<BankModel>>() {
+				});
+		assertEquals(2, returnBanks.size());
+		assertEquals("DODEU8XXX", returnBanks.get(0).getBic());
+		assertEquals("CONSSWE10XXX", returnBanks.get(1).getBic());
+	}
+
+	@Test
+	public void testV1BanksBatchByBodySuccess() throws Exception {
+		TestResponse response = request(Constants.POST, v1BatchUrl, "[\"DODEU8XXX\"]");
+		assertEquals(200, response.status);
+		assertNotNull(response.body);
+		List<BankModel> returnBanks = new ObjectMapper().readValue(response.body,
+				new TypeReference<List<BankModel>>() {
+				});
+		AssertBanksAreEqual(expectedV1BanksForBIC(), returnBanks);
+	}
+
+	@Test
+	public void testV1BanksBatchInvalidBody() throws Exception {
+		TestResponse response = request(Constants.POST, v1BatchUrl, "{\"bic\": 1}");
+		assertEquals(400, response.status);
+		assertEquals(400, request(Constants.POST, v1BatchUrl, "null").status);
+	}
+
+	@Test
+	public void testV1BanksBatchNoContent() throws Exception {
+		assertEquals(204, request(Constants.GET, v1BatchUrl + "?bic=UNKNOWNXXX").status);
+	}
+
+	@Test
+	public void testV2BanksBatchSuccess() throws Exception {
+		TestResponse response = request(Constants.POST, v2BatchUrl, "[\"MOLLITNOR4XXX\", \"UNKNOWNXXX\"]");
+		assertEquals(200, response.status);
+		assertNotNull(response.body);
+		List<BankModel> returnBanks = new ObjectMapper().readValue(response.body,
+				new TypeReference<List<BankModel>>() {
+				});
+		assertEquals(1, returnBanks.size());
+		AssertBanksAreEqualForV2(expectedV2BanksForBicFilter(), returnBanks);
+	}
+
+	@Test
+	public void testV2BanksBatchNoContent() throws Exception {
+		TestResponse response = request(Constants.GET, v2BatchUrl + "?bic=UNKNOWNXXX");
+		assertEquals(204, response.status);
+	}
+
+	@Test
+	public void testV2BanksBatchInvalidBody() throws Exception {
+		assertEquals(400, request(Constants.POST, v2BatchUrl, "{\"bic\": 1}").status);
+		assertEquals(400, request(Constants.POST, v2BatchUrl, "null").status);
+	}
+
+	@Test
+	public void testV1BanksExportSortedByBic() throws Exception {
+		TestResponse response = request(Constants.GET, v1ExportUrl);
+		assertEquals(200, response.status);
+		List<BankModel> returnBanks = readNdjson(response.body);
+		assertEquals(20, returnBanks.size());
+		for (int i = 1; i < returnBanks.size(); i++) {
+			assertTrue(returnBanks.get(i - 1).getBic().compareTo(returnBanks.get(i).getBic()) < 0);
+		}
+	}
+
+	@Test
+	public void testV1BanksExportResumeWithFilter() throws Exception {
+		TestResponse response = request(Constants.GET, v1ExportUrl + "?countryCode=SE&after=CONSSWE10XXX");
+		assertEquals(200, response.status);
+		List<BankModel> returnBanks = readNdjson(response.body);
+		assertEquals(2, returnBanks.size());
+		assertEquals("ETSWE19XXX", returnBanks.get(0).getBic());
+		assertEquals("MOLLITSWE5XXX", returnBanks.get(1).getBic());
+	}
+
+	@Test
+	public void testV1BanksExportGzip() throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + v1ExportUrl + "?countryCode=SE")
+				.openConnection();
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		try {
+			assertEquals(200, connection.getResponseCode());
+			assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+			assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+			String body = IOUtils.toString(new GZIPInputStream(connection.getInputStream()));
+			assertEquals(3, readNdjson(body).size());
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void testV1BanksExportGzipRefused() throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + v1ExportUrl + "?countryCode=SE")
+				.openConnection();
+		connection.setRequestProperty("Accept-Encoding", "gzip;q=0, identity");
+		try {
+			assertEquals(200, connection.getResponseCode());
+			assertEquals(null, connection.getHeaderField("Content-Encoding"));
+			assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+			assertEquals(3, readNdjson(IOUtils.toString(connection.getInputStream())).size());
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void testV2BanksExportWithFilter() throws Exception {
+		TestResponse response = request(Constants.GET, v2ExportUrl + "?countryCode=CH");
+		assertEquals(200, response.status);
+		AssertBanksAreEqualForV2(expectedV2BanksForCountryCode(), readNdjson(response.body));
+	}
+
+	@Test
+	public void testV2BanksExportResume() throws Exception {
+		TestResponse response = request(Constants.GET, v2ExportUrl + "?auth=open-id&after=CUPIDATATSP1XXX");
+		assertEquals(200, response.status);
+		List<BankModel> returnBanks = readNdjson(response.body);
+		assertEquals(2, returnBanks.size());
+		assertEquals("MOLLITNOR4XXX", returnBanks.get(0).getBic());
+		assertEquals("DODEU8XXX", returnBanks.get(1).getBic());
+	}
+
+	@Test
+	public void testV2BanksExportResumeAfterUnknownBic() throws Exception {
+		assertEquals(400, request(Constants.GET, v2ExportUrl + "?after=UNKNOWNXXX").status);
+	}
+
+	@Test
+	public void testV2BanksExportSkipsFailingAndSlowProviders() throws Exception {
+		// the same providers, one in the middle answering a body that cannot be parsed, a later one too slowly
+		Path brokenConfig = Files.createTempFile("banks-v2-broken", ".json");
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream("banks-v2.json")) {
+			Files.write(brokenConfig, IOUtils.toString(in).replace("localhost:1234/mbs", "localhost:1234/broken")
+					.replace("localhost:1234/nnb", "localhost:1234/slow/nnb").getBytes(StandardCharsets.UTF_8));
+		}
+		Process instance = startInstance(8089, "-Dbankbridge.remote.config=" + brokenConfig,
+				"-Dbankbridge.remote.exportFetchMillis=150");
+		try {
+			List<String> expected = new ArrayList<>();
+			for (BankModel bankModel : readNdjson(request(Constants.GET, v2ExportUrl).body)) {
+				if (!"MOLLITSWE5XXX".equals(bankModel.getBic()) && !"NONNOR11XXX".equals(bankModel.getBic()))
+					expected.add(bankModel.getBic());
+			}
+			TestResponse response = request("http://localhost:8089", Constants.GET, v2ExportUrl, null);
+			assertEquals(200, response.status);
+			assertEquals(expected, readNdjson(response.body).stream().map(BankModel::getBic)
+					.collect(Collectors.toList()));
+		} finally {
+			instance.destroy();
+			instance.waitFor();
+			Files.deleteIfExists(brokenConfig);
+		}
+	}
+
+	@Test
+	public void testV1BanksSortedByNamePage() throws Exception {
+		TestResponse response = request(Constants.GET, v1BanksUrl + "?sort=name&page=2&size=2");
+		assertEquals(200, response.status);
+		List<BankModel> returnBanks = new ObjectMapper().readValue(response.body,
+				new TypeReference<List<BankModel>>() {
+				});
+		assertEquals(2, returnBanks.size());
+		assertEquals("Banco de espiritu santo", returnBanks.get(0).getName());
+		assertEquals("Banco Republico", returnBanks.get(1).getName());
+	}
+
+	@Test
+	public void testV1BanksSortedByMultipleKeys() throws Exception {
+		TestResponse response = request(Constants.GET, v1BanksUrl + "?sort=countryCode,-name&page=1&size=3");
+		assertEquals(200, response.status);
+		List<BankModel> returnBanks = new ObjectMapper().readValue(response.body,
+				new TypeReference<List<BankModel>>() {
+				});
+		assertEquals(3, returnBanks.size());
+		assertEquals("CUPIDATATSP1XXX", returnBanks.get(0).getBic());
+		assertEquals("DODEU8XXX", returnBanks.get(1).getBic());
+		assertEquals("SOARCDEU18XXX", returnBanks.get(2).getBic());
+	}
+
+	@Test
+	public void testV1BanksUnknownSortField() throws Exception {
+		TestResponse response = request(Constants.GET, v1BanksUrl + "?sort=auth");
+		assertEquals(400, response.status);
+	}
+
+	@Test
+	public void testV2BanksSortedDescendingWithFilter() throws Exception {
+		TestResponse response = request(Constants.GET, v2BanksUrl + "?auth=oauth&sort=-name&page=1&size=2");
+		assertEquals(200, response.status);
+		List<BankModel> returnBanks = new ObjectMapper().readValue(response.body,
+				new TypeReference<List<BankModel>>() {
+				});
+		assertEquals(2, returnBanks.size());
+		assertEquals("Soar Credit Union", returnBanks.get(0).getName());
+		assertEquals("Royal Bank of Fun", returnBanks.get(1).getName());
+	}
+
+	@Test
+	public void testV1BanksWithAuthAndCountryCodeFilterSuccess() throws Exception {
+		TestResponse response = request(Constants.GET, v1BanksUrl + "?countryCode=NO&auth=open-id");
+		assertEquals(200, response.status);
+		List<BankModel> returnBanks = new ObjectMapper().readValue(response.body,
+				new TypeReference<List<BankModel>>() {
+				});
+		assertEquals(1, returnBanks.size());
+		assertEquals("MOLLITNOR4XXX", returnBanks.get(0).getBic());
+	}
+
+	@Test
+	public void testV1BanksPageOutOfRange() throws Exception {
+		TestResponse response = request(Constants.GET, v1BanksUrl + "?page=30&size=2");
+		assertEquals(200, response.status);
+		assertEquals("[]", response.body);
+	}
+
+	@Test
+	public void testPageBeyondIntRangeIsBadRequest() throws Exception {
+		// (page - 1) * size overflows an int and would wrap to a small or negative offset
+		assertEquals(400, request(Constants.GET, v1BanksUrl + "?page=1073741825&size=4").status);
+		assertEquals(400, request(Constants.GET, v1BanksUrl + "?sort=name&page=2147483647&size=2147483647").status);
+		assertEquals(400, request(Constants.GET, v2BanksUrl + "?page=1073741825&size=4").status);
+		assertEquals(200, request(Constants.GET, v1BanksUrl + "?page=1073741823&size=2").status);
+	}
+
+	@Test
+	public void testV2BanksWithPartialNameFilterSuccess() throws Exception {
+		TestResponse response = request(Constants.GET, v2BanksUrl + "?name=Credit");
+		assertEquals(200, response.status);
+		List<BankModel> returnBanks = new ObjectMapper().readValue(response.body,
+				new TypeReference<List<BankModel>>() {
+				});
+		assertEquals(2, returnBanks.size());
+		assertEquals("CUPIDATATSP1XXX", returnBanks.get(0).getBic());
+		assertEquals("SOARCDEU18XXX", returnBanks.get(1).getBic());
+	}
+
+	@Test
+	public void testRateLimitPerApiKey() throws Exception {
+		int status = 200;
+		String retryAfter = null;
+		for (int i = 0; i < 100 && status == 200; i++) {
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + v1ExportUrl + "?bic=DODEU8XXX")
+					.openConnection();
+			connection.setRequestProperty("X-API-Key", "rate-limit-test");
+			status = connection.getResponseCode();
+			retryAfter = connection.getHeaderField("Retry-After");
+			connection.disconnect();
+		}
+		assertEquals(429, status);
+		assertNotNull(retryAfter);
+
+		// other clients keep their own budget
+		assertEquals(200, request(Constants.GET, v1BanksUrl + "?bic=DODEU8XXX").status);
+	}
+
+	@Test
+	public void testUnknownApiKeysShareTheBucketOfTheirAddress() throws Exception {
+		Process instance = startInstance(8087, "-Dbankbridge.rateLimit.burst=3", "-Dbankbridge.rateLimit.perSecond=1",
+				"-Dbankbridge.rateLimit.apiKeys=known");
+		try {
+			for (int i = 1; i <= 3; i++)
+				assertEquals(200, statusWithApiKey("http://localhost:8087", "made-up-" + i));
+			assertEquals(429, statusWithApiKey("http://localhost:8087", "made-up-4"));
+			assertEquals(200, statusWithApiKey("http://localhost:8087", "known"));
+		} finally {
+			instance.destroy();
+			instance.waitFor();
+		}
+	}
+
+	private int statusWithApiKey(String baseUrl, String apiKey) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + v1BanksUrl).openConnection();
+		connection.setRequestProperty(Constants.HEADER_API_KEY, apiKey);
+		try {
+			return connection.getResponseCode();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void testV2BanksBatchSkipsFailingProvider() throws Exception {
+		// the same providers, one of them in the middle answering a body that cannot be parsed
+		Path brokenConfig = Files.createTempFile("banks-v2-broken", ".json");
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream("banks-v2.json")) {
+			Files.write(brokenConfig, IOUtils.toString(in).replace("localhost:1234/mbs", "localhost:1234/broken")
+					.getBytes(StandardCharsets.UTF_8));
+		}
+		String instanceUrl = "http://localhost:8089";
+		Process instance = startInstance(8089, "-Dbankbridge.remote.config=" + brokenConfig);
+		try {
+			TestResponse response = request(instanceUrl, Constants.POST, v2BatchUrl,
+					"[\"MOLLITNOR4XXX\", \"UNKNOWNXXX\"]");
+			assertEquals(200, response.status);
+			assertEquals("false", response.header("X-Result-Complete"));
+			assertEquals("Mbanken ASA", response.header("X-Missing-Providers"));
+			AssertBanksAreEqualForV2(expectedV2BanksForBicFilter(), new ObjectMapper().readValue(response.body,
+					new TypeReference<List<BankModel>>() {
+					}));
+
+			// every BIC found, the failing provider did not matter
+			response = request(instanceUrl, Constants.POST, v2BatchUrl, "[\"MOLLITNOR4XXX\"]");
+			assertEquals(200, response.status);
+			assertEquals(null, response.header("X-Missing-Providers"));
+		} finally {
+			instance.destroy();
+			instance.waitFor();
+			Files.deleteIfExists(brokenConfig);
+		}
+	}
+
+	@Test
+	public void testRemoteLimitsReported() throws Exception {
+		assertEquals(200, request(Constants.GET, v2BanksUrl + "?bic=MOLLITNOR4XXX").status);
+		TestResponse response = request(Constants.GET, "/status/remote-limits");
+		assertEquals(200, response.status);
+		JsonNode limits = new ObjectMapper().readTree(response.body).get("localhost:1234");
+		assertNotNull(limits);
+		assertTrue(limits.get("limit").asInt() >= 1);
+		assertEquals(0, limits.get("inFlight").asInt());
+	}
+
+	@Test
+	public void testV2BanksDeadlineReturnsPartialResult() throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + v2BanksUrl + "?deadline=1")
+				.openConnection();
+		try {
+			int status = connection.getResponseCode();
+			assertTrue(status == 200 || status == 504);
+			assertEquals("false", connection.getHeaderField("X-Result-Complete"));
+			assertNotNull(connection.getHeaderField("X-Missing-Providers"));
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void testTinyDeadlinesDoNotShrinkHostLimit() throws Exception {
+		// the same providers, answering slower than the deadline of the test requests
+		Path slowConfig = Files.createTempFile("banks-v2-slow", ".json");
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream("banks-v2.json")) {
+			Files.write(slowConfig, IOUtils.toString(in).replace("localhost:1234/", "localhost:1234/slow/")
+					.getBytes(StandardCharsets.UTF_8));
+		}
+		String instanceUrl = "http://localhost:8088";
+		Process instance = startInstance(8088, "-Dbankbridge.remote.config=" + slowConfig,
+				"-Dbankbridge.warmup.remoteIterations=1");
+		try {
+			int before = new ObjectMapper().readTree(request(instanceUrl, Constants.GET, "/status/remote-limits", null)
+					.body).get("localhost:1234").get("limit").asInt();
+			for (int i = 0; i < 5; i++)
+				assertEquals(504, request(instanceUrl, Constants.GET, v2BanksUrl + "?deadline=50", null).status);
+			// let the abandoned fetches finish
+			Thread.sleep(500);
+			int after = new ObjectMapper().readTree(request(instanceUrl, Constants.GET, "/status/remote-limits", null)
+					.body).get("localhost:1234").get("limit").asInt();
+			// counted as errors, the abandoned fetches would have halved the limit with every request
+			assertEquals(before, after);
+		} finally {
+			instance.destroy();
+			instance.waitFor();
+			Files.deleteIfExists(slowConfig);
+		}
+	}
+
+	@Test
+	public void testV2BanksGenerousDeadlineIsComplete() throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + v2BanksUrl + "?countryCode=CH")
+				.openConnection();
+		connection.setRequestProperty("X-Deadline-Ms", "10000");
+		try {
+			assertEquals(200, connection.getResponseCode());
+			assertEquals(null, connection.getHeaderField("X-Result-Complete"));
+			List<BankModel> returnBanks = new ObjectMapper().readValue(IOUtils.toString(connection.getInputStream()),
+					new TypeReference<List<BankModel>>() {
+					});
+			AssertBanksAreEqualForV2(expectedV2BanksForCountryCode(), returnBanks);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void testV2BanksInvalidDeadline() throws Exception {
+		TestResponse response = request(Constants.GET, v2BanksUrl + "?deadline=-5");
+		assertEquals(400, response.status);
+	}
+
+	@Test
+	public void testV1BanksFieldProjection() throws Exception {
+		TestResponse response = request(Constants.GET, v1BanksUrl + "?bic=DODEU8XXX&fields=name,bic");
+		assertEquals(200, response.status);
+		assertEquals("[{\"bic\":\"DODEU8XXX\",\"name\":\"Bank Dariatur\"}]", response.body);
+	}
+
+	@Test
+	public void testV2BanksFieldProjection() throws Exception {
+		TestResponse response = request(Constants.GET, v2BanksUrl + "?bic=MOLLITNOR4XXX&fields=bic,auth");
+		assertEquals(200, response.status);
+		assertEquals("[{\"bic\":\"MOLLITNOR4XXX\",\"auth\":\"open-id\"}]", response.body);
+	}
+
+	@Test
+	public void testV2BanksProjectionOutsideView() throws Exception {
+		TestResponse response = request(Constants.GET, v2BanksUrl + "?fields=bic,products");
+		assertEquals(400, response.status);
+	}
+
+	@Test
+	public void testV1BanksCborEncoding() throws Exception {
+		// the JSON response of the same query is cached first, the CBOR one must not be served from it
+		assertEquals(200, request(Constants.GET, v1BanksUrl + "?countryCode=SE").status);
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + v1BanksUrl + "?countryCode=SE")
+				.openConnection();
+		connection.setRequestProperty("Accept", "application/json;q=0.5, application/cbor");
+		try {
+			assertEquals(200, connection.getResponseCode());
+			assertTrue(connection.getContentType().startsWith("application/cbor"));
+			assertEquals("Accept", connection.getHeaderField("Vary"));
+			List<BankModel> returnBanks = new ObjectMapper(new CBORFactory()).readValue(connection.getInputStream(),
+					new TypeReference<List<BankModel>>() {
+					});
+			AssertBanksAreEqual(expectedV1BanksForCountryCode(), returnBanks);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void testV2BanksSmileEncodingWithProjection() throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + v2BanksUrl
+				+ "?bic=MOLLITNOR4XXX&fields=bic,auth").openConnection();
+		connection.setRequestProperty("Accept", "application/x-jackson-smile");
+		try {
+			assertEquals(200, connection.getResponseCode());
+			assertTrue(connection.getContentType().startsWith("application/x-jackson-smile"));
+			JsonNode banks = new ObjectMapper(new SmileFactory()).readTree(connection.getInputStream());
+			assertEquals("[{\"bic\":\"MOLLITNOR4XXX\",\"auth\":\"open-id\"}]", banks.toString());
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void testRequestIdReturnedAndEchoed() throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + v1BanksUrl).openConnection();
+		assertEquals(200, connection.getResponseCode());
+		assertNotNull(connection.getHeaderField("X-Request-Id"));
+		connection.disconnect();
+
+		connection = (HttpURLConnection) new URL("http://localhost:8080" + v1BanksUrl).openConnection();
+		connection.setRequestProperty("X-Request-Id", "upstream-42");
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("upstream-42", connection.getHeaderField("X-Request-Id"));
+		connection.disconnect();
+	}
+
+	@Test
+	public void testFlightRecorderEventsCorrelatedByRequestId() throws Exception {
+		Path dump = Files.createTempFile("bankbridge", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("io.bankbridge.Request");
+			recording.enable("io.bankbridge.Phase");
+			recording.enable("io.bankbridge.RemoteFetch");
+			recording.start();
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + v2BanksUrl
+					+ "?countryCode=NO").openConnection();
+			connection.setRequestProperty("X-Request-Id", "jfr-test");
+			assertEquals(200, connection.getResponseCode());
+			connection.disconnect();
+			recording.stop();
+			recording.dump(dump);
+		}
+
+		List<String> phases = new ArrayList<>();
+		int remoteFetches = 0;
+		boolean requestRecorded = false;
+		for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+			if (!"jfr-test".equals(event.getString("requestId")))
+				continue;
+			switch (event.getEventType().getName()) {
+			case "io.bankbridge.Phase":
+				phases.add(event.getString("phase"));
+				break;
+			case "io.bankbridge.RemoteFetch":
+				assertNotNull(event.getString("provider"));
+				assertEquals(200, event.getInt("statusCode"));
+				assertTrue(event.getLong("bytes") > 0);
+				remoteFetches++;
+				break;
+			case "io.bankbridge.Request":
+				assertEquals(200, event.getInt("statusCode"));
+				requestRecorded = true;
+				break;
+			}
+		}
+		Files.delete(dump);
+		assertTrue(requestRecorded);
+		assertTrue(remoteFetches > 0);
+		assertTrue(phases.containsAll(Arrays.asList("PARSE", "REMOTE_FETCH", "SERIALIZE")));
+	}
+
+	@Test
+	public void testFollowerServesLeaderSnapshotWithoutCallingProviders() throws Exception {
+		// the leader holds the banks it fetched for its own clients
+		assertEquals(200, request(Constants.GET, v2BanksUrl).status);
+
+		TestResponse snapshot = request(Constants.GET, "/replication/snapshot");
+		assertEquals(200, snapshot.status);
+		JsonNode full = new ObjectMapper().readTree(snapshot.body);
+		assertTrue(full.get("full").asBoolean());
+		assertTrue(full.get("banks").size() > 0);
+		TestResponse delta = request(Constants.GET, "/replication/snapshot?epoch=" + full.get("epoch").asText()
+				+ "&since=" + full.get("version").asLong());
+		assertEquals(false, new ObjectMapper().readTree(delta.body).get("full").asBoolean());
+
+		Process follower = startInstance(8081, "-Dbankbridge.replication.leader=http://localhost:8080");
+		try {
+			assertEquals(200, request("http://localhost:8081", Constants.GET, v2BanksUrl + "?bic=MOLLITNOR4XXX", null)
+					.status);
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8081/status/remote-limits")
+					.openConnection();
+			assertEquals("{}", IOUtils.toString(connection.getInputStream()));
+			connection.disconnect();
+		} finally {
+			follower.destroy();
+			follower.waitFor();
+		}
+	}
+
+	@Test
+	public void testReadyAfterWarmup() throws Exception {
+		TestResponse ready = request(Constants.GET, "/status/ready");
+		assertEquals(200, ready.status);
+		JsonNode status = new ObjectMapper().readTree(ready.body);
+		assertTrue(status.get("ready").asBoolean());
+		assertTrue(status.get("warmupMillis").asLong() >= 0);
+		// the warm-up connected to the remote host
+		assertTrue(request(Constants.GET, "/status/remote-limits").body.contains("localhost:1234"));
+	}
+
+	@Test
+	public void testV2SnapshotFileRestoredAfterRestart() throws Exception {
+		Path snapshotFile = Files.createTempFile("banks-v2-snapshot", ".json");
+		Files.delete(snapshotFile);
+		String[] properties = { "-Dbankbridge.remote.snapshotFile=" + snapshotFile,
+				"-Dbankbridge.remote.snapshotWriteMillis=100" };
+		Process instance = startInstance(8085, properties);
+		try {
+			// the warm-up fetched every provider, which is written out shortly after
+			for (int i = 0; i < 50 && !Files.exists(snapshotFile); i++)
+				Thread.sleep(100);
+			assertTrue(Files.exists(snapshotFile));
+		} finally {
+			instance.destroy();
+			instance.waitFor();
+		}
+		int persisted = new ObjectMapper().readTree(snapshotFile.toFile()).get("banks").size();
+		assertTrue(persisted > 0);
+
+		// the same providers, now on a port nobody listens on
+		Path unreachableConfig = Files.createTempFile("banks-v2-unreachable", ".json");
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream("banks-v2.json")) {
+			Files.write(unreachableConfig, IOUtils.toString(in).replace("localhost:1234", "localhost:1239")
+					.getBytes(StandardCharsets.UTF_8));
+		}
+		instance = startInstance(8085, properties[0], properties[1],
+				"-Dbankbridge.remote.config=" + unreachableConfig);
+		try {
+			TestResponse restored = request("http://localhost:8085", Constants.GET, v2BanksUrl, null);
+			assertEquals(200, restored.status);
+			assertEquals(request(Constants.GET, v2BanksUrl).body, restored.body);
+			JsonNode status = new ObjectMapper().readTree(request("http://localhost:8085", Constants.GET,
+					"/status/ready", null).body);
+			assertEquals(persisted, status.get("restoredBanks").asInt());
+			assertTrue(status.get("initMillis").asLong() > 0);
+			assertTrue(status.get("firstGoodV2ResponseMillis").asLong() >= status.get("initMillis").asLong());
+			// no v1 query was made, and the status checks themselves do not count
+			assertEquals(-1, status.get("firstGoodV1ResponseMillis").asLong());
+		} finally {
+			instance.destroy();
+			instance.waitFor();
+			Files.deleteIfExists(snapshotFile);
+			Files.deleteIfExists(unreachableConfig);
+		}
+	}
+
+	@Test
+	public void testV2BulkFetchOneCallPerHost() throws Exception {
+		Process instance = startInstance(8086, "-Dbankbridge.remote.bulkEndpoints=http://localhost:1234/bulk");
+		try {
+			ObjectMapper mapper = new ObjectMapper();
+			JsonNode before = mapper.readTree(new URL("http://localhost:1234/stats"));
+			TestResponse bulk = request("http://localhost:8086", Constants.GET, v2BanksUrl, null);
+			JsonNode after = mapper.readTree(new URL("http://localhost:1234/stats"));
+
+			assertEquals(200, bulk.status);
+			assertEquals(request(Constants.GET, v2BanksUrl).body, bulk.body);
+			assertEquals(before.get("bulk").asLong() + 1, after.get("bulk").asLong());
+			assertEquals(before.get("single").asLong(), after.get("single").asLong());
+
+			// exports and batches that have to ask every provider take the same path
+			String expectedExport = request(Constants.GET, v2ExportUrl).body;
+			before = mapper.readTree(new URL("http://localhost:1234/stats"));
+			TestResponse export = request("http://localhost:8086", Constants.GET, v2ExportUrl, null);
+			assertEquals(204, request("http://localhost:8086", Constants.GET, v2BatchUrl + "?bic=UNKNOWNXXX", null)
+					.status);
+			after = mapper.readTree(new URL("http://localhost:1234/stats"));
+
+			assertEquals(200, export.status);
+			assertEquals(expectedExport, export.body);
+			assertEquals(before.get("bulk").asLong() + 2, after.get("bulk").asLong());
+			assertEquals(before.get("single").asLong(), after.get("single").asLong());
+		} finally {
+			instance.destroy();
+			instance.waitFor();
+		}
+	}
+
+	@Test
+	public void testReadyOnlyAfterWarmUp() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		int providers = mapper.readTree(getClass().getClassLoader().getResource("banks-v2.json")).size();
+		long before = mapper.readTree(new URL("http://localhost:1234/stats")).get("single").asLong();
+		// enough v1 replays to keep the instance warming up for a while after its routes are up
+		Process instance = launchInstance(8089, "-Dbankbridge.warmup.iterations=200000");
+		try {
+			List<Integer> statuses = new ArrayList<>();
+			for (int i = 0; i < 600 && !statuses.contains(200); i++) {
+				try {
+					HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8089/status/ready")
+							.openConnection();
+					statuses.add(connection.getResponseCode());
+					connection.disconnect();
+				} catch (IOException e) {
+					// not listening yet
+				}
+				Thread.sleep(50);
+			}
+			assertEquals(Integer.valueOf(503), statuses.get(0));
+			assertEquals(Integer.valueOf(200), statuses.get(statuses.size() - 1));
+
+			// one call per provider, the v2 replays read the fetched banks
+			assertEquals(providers, mapper.readTree(new URL("http://localhost:1234/stats")).get("single").asLong()
+					- before);
+		} finally {
+			instance.destroy();
+			instance.waitFor();
+		}
+	}
+
+	@Test
+	public void testRouterMergesCountryShards() throws Exception {
+		String router = "http://localhost:8084";
+		List<Process> instances = new ArrayList<>();
+		try {
+			String adminKey = "-Dbankbridge.admin.apiKey=" + ADMIN_KEY;
+			instances.add(startInstance(8082, adminKey, "-Dbankbridge.shard.countries=SE,NO"));
+			// the shard of all other countries only knows the countries it leaves to the first shard
+			instances.add(startInstance(8083, adminKey, "-Dbankbridge.shard.excludedCountries=SE,NO"));
+			instances.add(startInstance(8084, adminKey,
+					"-Dbankbridge.router.shards=SE,NO=http://localhost:8082;*=http://localhost:8083"));
+
+			// each shard only holds its own countries
+			assertEquals("[]", request("http://localhost:8082", Constants.GET, v1BanksUrl + "?countryCode=DE", null)
+					.body);
+			assertEquals("[]", request("http://localhost:8083", Constants.GET, v1BanksUrl + "?countryCode=SE", null)
+					.body);
+			// and takes changes for them, including countries no shard lists
+			assertEquals(400, request("http://localhost:8082", Constants.PUT, "/v1/banks/TESTLU1XXX",
+					"{\"bic\":\"TESTLU1XXX\",\"name\":\"Test Bank\",\"countryCode\":\"LU\"}").status);
+			assertEquals(400, request("http://localhost:8083", Constants.PUT, "/v1/banks/TESTSE1XXX",
+					"{\"bic\":\"TESTSE1XXX\",\"name\":\"Test Bank\",\"countryCode\":\"SE\"}").status);
+			assertEquals(200, request("http://localhost:8083", Constants.PUT, "/v1/banks/TESTLU1XXX",
+					"{\"bic\":\"TESTLU1XXX\",\"name\":\"Test Bank\",\"countryCode\":\"LU\"}").status);
+			assertEquals(200, request("http://localhost:8083", Constants.DELETE, "/v1/banks/TESTLU1XXX", null).status);
+
+			for (String query : new String[] { "?countryCode=SE", "?countryCode=de&sort=name",
+					"?sort=name&page=2&size=2", "?sort=-countryCode,bic&page=3&size=4&fields=bic,countryCode",
+					"?sort=name&page=9&size=5" })
+				assertEquals(query, request(Constants.GET, v1BanksUrl + query).body,
+						request(router, Constants.GET, v1BanksUrl + query, null).body);
+
+			// unsorted results are concatenated in shard order, the set of banks is the same
+			ObjectMapper mapper = new ObjectMapper();
+			List<BankModel> local = Arrays.asList(mapper.readValue(request(Constants.GET, v1BanksUrl).body,
+					BankModel[].class));
+			TestResponse routed = request(router, Constants.GET, v1BanksUrl, null);
+			assertEquals(200, routed.status);
+			List<BankModel> merged = Arrays.asList(mapper.readValue(routed.body, BankModel[].class));
+			assertEquals(local.size(), merged.size());
+			assertEquals(local.stream().map(BankModel::getBic).collect(Collectors.toSet()),
+					merged.stream().map(BankModel::getBic).collect(Collectors.toSet()));
+
+			// the router holds no banks, so it does not answer what it does not route
+			assertEquals(501, request(router, Constants.GET, v1BatchUrl + "?bic=DOLORENOR2XXX", null).status);
+			assertEquals(501, request(router, Constants.POST, v1BatchUrl, "[\"DOLORENOR2XXX\"]").status);
+			assertEquals(501, request(router, Constants.GET, v1ExportUrl, null).status);
+			assertEquals(501, request(router, Constants.PUT, "/v1/banks/TESTLU1XXX",
+					"{\"bic\":\"TESTLU1XXX\",\"name\":\"Test Bank\",\"countryCode\":\"LU\"}").status);
+			assertEquals(501, request(router, Constants.DELETE, "/v1/banks/DOLORENOR2XXX", null).status);
+			assertEquals(501, request(router, Constants.POST, "/v1/banks/changes", "[]").status);
+
+			// a failed shard leaves a partial result
+			instances.get(1).destroy();
+			instances.get(1).waitFor();
+			HttpURLConnection connection = (HttpURLConnection) new URL(router + v1BanksUrl).openConnection();
+			assertEquals(200, connection.getResponseCode());
+			assertEquals("false", connection.getHeaderField(Constants.HEADER_RESULT_COMPLETE));
+			assertEquals("http://localhost:8083", connection.getHeaderField(Constants.HEADER_MISSING_SHARDS));
+			assertEquals(8, mapper.readValue(connection.getInputStream(), BankModel[].class).length);
+			connection.disconnect();
+		} finally {
+			for (Process instance : instances) {
+				instance.destroy();
+				instance.waitFor();
+			}
+		}
+	}
+
+	@Test
+	public void testRouterLeavesOutShardsThatDoNotAnswerInTime() throws Exception {
+		// accepts connections but never answers
+		try (ServerSocket silentShard = new ServerSocket(0)) {
+			String silentShardUrl = "http://localhost:" + silentShard.getLocalPort();
+			Process router = startInstance(8084, "-Dbankbridge.router.timeoutMillis=500",
+					"-Dbankbridge.router.shards=SE,NO=http://localhost:8080;*=" + silentShardUrl);
+			try {
+				long start = System.nanoTime();
+				HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8084" + v1BanksUrl)
+						.openConnection();
+				assertEquals(200, connection.getResponseCode());
+				assertEquals("false", connection.getHeaderField(Constants.HEADER_RESULT_COMPLETE));
+				assertEquals(silentShardUrl, connection.getHeaderField(Constants.HEADER_MISSING_SHARDS));
+				connection.disconnect();
+				assertEquals(502, request("http://localhost:8084", Constants.GET, v1BanksUrl + "?countryCode=DE", null)
+						.status);
+				assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+			} finally {
+				router.destroy();
+				router.waitFor();
+			}
+		}
+	}
+
+	@Test
+	public void testRouterForwardsClientIdentityToShards() throws Exception {
+		String trustLocalhost = "-Dbankbridge.admission.trustedProxies=127.0.0.1,0:0:0:0:0:0:0:1";
+		List<Process> instances = new ArrayList<>();
+		try {
+			instances.add(startInstance(8082, trustLocalhost, "-Dbankbridge.rateLimit.burst=2",
+					"-Dbankbridge.rateLimit.perSecond=1"));
+			instances.add(startInstance(8084, trustLocalhost, "-Dbankbridge.router.shards=*=http://localhost:8082"));
+
+			// each client has its own bucket on the shard, not one shared by everything the router sends
+			for (int client = 1; client <= 5; client++)
+				assertEquals(200, routedStatus("10.0.0." + client));
+			assertEquals(200, routedStatus("10.0.0.9"));
+			assertEquals(200, routedStatus("10.0.0.9"));
+			assertEquals(502, routedStatus("10.0.0.9"));
+		} finally {
+			for (Process instance : instances) {
+				instance.destroy();
+				instance.waitFor();
+			}
+		}
+	}
+
+	private int routedStatus(String clientIp) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8084" + v1BanksUrl)
+				.openConnection();
+		connection.setRequestProperty(Constants.HEADER_FORWARDED_FOR, clientIp);
+		try {
+			return connection.getResponseCode();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void testV1IncrementalChanges() throws Exception {
+		String bankUrl = "/v1/banks/TESTLU1XXX";
+		assertEquals("[]", request(Constants.GET, v1BanksUrl + "?countryCode=LU").body);
+		try {
+			TestResponse response = request(Constants.PUT, bankUrl,
+					"{\"name\":\"Aaa Test Bank\",\"countryCode\":\"LU\",\"products\":[\"accounts\"]}");
+			assertEquals(200, response.status);
+			assertEquals("[{\"bic\":\"TESTLU1XXX\",\"name\":\"Aaa Test Bank\",\"countryCode\":\"LU\","
+					+ "\"products\":[\"accounts\"]}]", request(Constants.GET, v1BanksUrl + "?countryCode=LU").body);
+			assertEquals("[{\"bic\":\"TESTLU1XXX\"}]",
+					request(Constants.GET, v1BanksUrl + "?sort=name&page=1&size=1&fields=bic").body);
+
+			response = request(Constants.POST, "/v1/banks/changes", "[{\"op\":\"upsert\",\"bank\":"
+					+ "{\"bic\":\"TESTLU1XXX\",\"name\":\"Aaa Test Bank\",\"countryCode\":\"MT\"}}]");
+			assertEquals(200, response.status);
+			assertEquals("[]", request(Constants.GET, v1BanksUrl + "?countryCode=LU").body);
+			assertEquals("[{\"bic\":\"TESTLU1XXX\"}]",
+					request(Constants.GET, v1BanksUrl + "?countryCode=MT&fields=bic").body);
+			assertEquals("[{\"bic\":\"TESTLU1XXX\"}]",
+					request(Constants.GET, v1BatchUrl + "?bic=TESTLU1XXX&fields=bic").body);
+
+			assertEquals(400, request(Constants.POST, "/v1/banks/changes", "[{\"op\":\"rename\"}]").status);
+			assertEquals(400, request(Constants.POST, "/v1/banks/changes", "[null]").status);
+			assertEquals(400, request(Constants.PUT, bankUrl, "null").status);
+		} finally {
+			assertEquals(200, request(Constants.DELETE, bankUrl).status);
+		}
+		assertEquals("[]", request(Constants.GET, v1BanksUrl + "?bic=TESTLU1XXX").body);
+		assertEquals(404, request(Constants.DELETE, bankUrl).status);
+	}
+
+	@Test
+	public void testV1ChangesNeedTheAdminKey() throws Exception {
+		String bank = "{\"name\":\"Aaa Test Bank\",\"countryCode\":\"LU\"}";
+		assertEquals(403, requestWithAdminKey(Constants.PUT, "/v1/banks/TESTLU2XXX", bank, null));
+		assertEquals(403, requestWithAdminKey(Constants.PUT, "/v1/banks/TESTLU2XXX", bank, "wrong"));
+		assertEquals(403, requestWithAdminKey(Constants.POST, "/v1/banks/changes",
+				"[{\"op\":\"delete\",\"bic\":\"DODEU8XXX\"}]", null));
+		assertEquals(403, requestWithAdminKey(Constants.DELETE, "/v1/banks/DODEU8XXX", null, null));
+		assertEquals("[]", request(Constants.GET, v1BanksUrl + "?bic=TESTLU2XXX").body);
+		assertEquals(200, request(Constants.GET, v1BatchUrl + "?bic=DODEU8XXX").status);
+		assertTrue(request(Constants.GET, v1BatchUrl + "?bic=DODEU8XXX").body.contains("DODEU8XXX"));
+	}
+
+	private int requestWithAdminKey(String method, String path, String body, String adminKey) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080" + path).openConnection();
+		connection.setRequestMethod(method);
+		if (adminKey != null)
+			connection.setRequestProperty(Constants.HEADER_ADMIN_KEY, adminKey);
+		if (body != null) {
+			connection.setDoOutput(true);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		try {
+			return connection.getResponseCode();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Starts the application in another JVM and waits until it serves requests.
+	 */
+	private static Process startInstance(int port, String... properties) throws Exception {
+		Process instance = launchInstance(port, properties);
+		if (!awaitReady("http://localhost:" + port)) {
+			instance.destroy();
+			fail("instance on port " + port + " did not start");
+		}
+		return instance;
+	}
+
+	private static Process launchInstance(int port, String... properties) throws Exception {
+		List<String> command = new ArrayList<>(Arrays.asList(
+				Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+				"-cp", System.getProperty("java.class.path"), "-Dbankbridge.port=" + port));
+		command.addAll(Arrays.asList(properties));
+		command.add("io.bankbridge.Main");
+		return new ProcessBuilder(command)
+				.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+	}
+
+	/**
+	 * Waits until the instance has finished its warm-up.
+	 */
+	private static boolean awaitReady(String baseUrl) throws InterruptedException {
+		for (int i = 0; i < 300; i++) {
+			try {
+				HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/status/ready").openConnection();
+				int status = connection.getResponseCode();
+				connection.disconnect();
+				if (status == 200)
+					return true;
+			} catch (IOException e) {
+				// not started yet
+			}
+			Thread.sleep(100);
+		}
+		return false;
+	}
+
+	private static List<BankModel> readNdjson(String body) throws Exception {
+		List<BankModel> banks = new ArrayList<>();
+		ObjectMapper objectMapper = new ObjectMapper();
+		for (String line : body.split("\n")) {
+			if (!line.isEmpty())
+				banks.add(objectMapper.readValue(line, BankModel.class));
+		}
+		return banks;
+	}
+
 	private static List<BankModel> expectedV1Banks() {
 		List<BankModel> mockBanks = new ArrayList<>();
 		BankModel bank = new BankModel();
@@ -491,15 +1430,30 @@ public class BankApiTest {
 	}
 	
 	private TestResponse request(String method, String path) {
+		return request(method, path, null);
+	}
+
+	private TestResponse request(String method, String path, String body) {
+		return request("http://localhost:8080", method, path, body);
+	}
+
+	private TestResponse request(String baseUrl, String method, String path, String body) {
 		HttpURLConnection connection = null;
 		try {
-			URL url = new URL("http://localhost:8080" + path);
+			URL url = new URL(baseUrl + path);
 			connection = (HttpURLConnection) url.openConnection();
 			connection.setRequestMethod(method);
+			connection.setRequestProperty(Constants.HEADER_ADMIN_KEY, ADMIN_KEY);
 			connection.setDoOutput(true);
 			connection.connect();
-			String body = IOUtils.toString(connection.getInputStream());
-			return new TestResponse(connection.getResponseCode(), body);
+			if (body != null) {
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(body.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			int status = connection.getResponseCode();
+			InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+			return new TestResponse(status, in != null ? IOUtils.toString(in) : null, connection.getHeaderFields());
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
@@ -513,10 +1467,20 @@ public class BankApiTest {
 
 		public final String body;
 		public final int status;
+		private final Map<String, List<String>> headers;
 
-		public TestResponse(int status, String body) {
+		public TestResponse(int status, String body, Map<String, List<String>> headers) {
 			this.status = status;
 			this.body = body;
+			this.headers = headers;
+		}
+
+		public String header(String name) {
+			for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+				if (name.equalsIgnoreCase(header.getKey()))
+					return String.join(",", header.getValue());
+			}
+			return null;
 		}
 	}
 }
@@ -0,0 +1,57 @@
+package io.bankbridge;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.BankModelList;
+import io.bankbridge.model.Views;
+import io.bankbridge.serialization.BankSerializer;
+import io.bankbridge.serialization.ResponseFormat;
+
+/**
+ * Compares encode time and payload size of the response formats, for a page of banks and for a large result.
+ * Run as a plain main class, e.g. {@code java -cp target/test-classes:target/classes:... io.bankbridge.EncodingBenchmark}.
+ */
+public class EncodingBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 20000;
+	private static final int MEASURED_ITERATIONS = 20000;
+
+	public static void main(String[] args) throws Exception {
+		BankModelList models = new ObjectMapper().readValue(
+				Thread.currentThread().getContextClassLoader().getResource("banks-v1.json"), BankModelList.class);
+		List<BankModel> page = models.getBanks().subList(0, 5);
+		List<BankModel> all = new ArrayList<>();
+		while (all.size() < 1000)
+			all.addAll(models.getBanks());
+
+		BankSerializer fullView = BankSerializer.of(Views.Cache.class, null);
+		BankSerializer projection = BankSerializer.of(Views.Cache.class, "bic,name");
+
+		System.out.printf("%-8s %-10s %-7s %12s %12s%n", "format", "fields", "banks", "encode (us)", "size (bytes)");
+		for (ResponseFormat format : ResponseFormat.values()) {
+			run(format, fullView, "all", page);
+			run(format, fullView, "all", all);
+			run(format, projection, "bic,name", page);
+			run(format, projection, "bic,name", all);
+		}
+	}
+
+	private static void run(ResponseFormat format, BankSerializer serializer, String fields, List<BankModel> banks)
+			throws Exception {
+		int iterations = banks.size() > 100 ? MEASURED_ITERATIONS / 100 : MEASURED_ITERATIONS;
+		int size = 0;
+		for (int i = 0; i < WARMUP_ITERATIONS / (banks.size() > 100 ? 100 : 1); i++)
+			size = format.encode(serializer, banks).length;
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			size = format.encode(serializer, banks).length;
+		double micros = (System.nanoTime() - start) / 1000.0 / iterations;
+
+		System.out.printf("%-8s %-10s %-7d %12.2f %12d%n", format, fields, banks.size(), micros, size);
+	}
+}
@@ -1,132 +1,189 @@
 package io.bankbridge;
 import static spark.Spark.get;
 import static spark.Spark.port;
+import static spark.Spark.post;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serves one bank per path, and all of them through the bulk route {@code POST /bulk}, which takes a JSON array of
+ * paths and answers a JSON object with the bank of every known path. {@code GET /stats} counts the calls of both.
+ * {@code GET /slow/<path>} answers the bank of the path after {@value #SLOW_MILLIS} ms.
+ */
 public class MockRemotes {
 
+	private static final int SLOW_MILLIS = 200;
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private static final Map<String, String> banks = new LinkedHashMap<>();
+	private static final AtomicLong singleCalls = new AtomicLong();
+	private static final AtomicLong bulkCalls = new AtomicLong();
+
 	public static void main(String[] args) throws Exception {
 		
 		port(1234);
 
-		get("/bes", (request, response) -> "{\n" + 
+		post("/bulk", (request, response) -> {
+			bulkCalls.incrementAndGet();
+			List<String> paths = objectMapper.readValue(request.body(), new TypeReference<List<String>>() {
+			});
+			StringBuilder body = new StringBuilder("{");
+			for (String path : paths) {
+				String bank = banks.get(path);
+				if (bank == null)
+					continue;
+				if (body.length() > 1)
+					body.append(',');
+				body.append(objectMapper.writeValueAsString(path)).append(':').append(bank);
+			}
+			response.type("application/json");
+			return body.append('}').toString();
+		});
+		get("/slow/:path", (request, response) -> {
+			Thread.sleep(SLOW_MILLIS);
+			return banks.get("/" + request.params(":path"));
+		});
+		get("/broken", (request, response) -> {
+			response.type("application/json");
+			return "{\"bic\":";
+		});
+		get("/stats", (request, response) -> "{\"single\":" + singleCalls.get()
+				+ ",\"bulk\":" + bulkCalls.get() + "}");
+
+		bank("/bes", "{\n" + 
 				"\"bic\":\"PARIATURDEU0XXX\",\n" + 
 				"\"name\":\"Banco de espiritu santo\",\n" + 
 				"\"countryCode\":\"GB\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/cs", (request, response) -> "{\n" + 
+		bank("/cs", "{\n" + 
 				"\"bic\":\"CUPIDATATSP1XXX\",\n" + 
 				"\"name\":\"Credit Sweets\",\n" + 
 				"\"countryCode\":\"CH\",\n" + 
 				"\"auth\":\"open-id\"\n" + 
 				"}");
-		get("/rbf", (request, response) -> "{\n" + 
+		bank("/rbf", "{\n" + 
 				"\"bic\":\"DOLORENOR2XXX\",\n" + 
 				"\"name\":\"Royal Bank of Fun\",\n" + 
 				"\"countryCode\":\"GB\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/bcd", (request, response) -> "{\n" + 
+		bank("/bcd", "{\n" + 
 				"\"bic\":\"DESERUNTSP3XXX\",\n" + 
 				"\"name\":\"Banco Con Deserts\",\n" + 
 				"\"countryCode\":\"SP\",\n" + 
 				"\"auth\":\"ssl-certificate\"\n" + 
 				"}");
-		get("/mbn", (request, response) -> "{\n" + 
+		bank("/mbn", "{\n" + 
 				"\"bic\":\"MOLLITNOR4XXX\",\n" + 
 				"\"name\":\"Mbanken\",\n" + 
 				"\"countryCode\":\"NO\",\n" + 
 				"\"auth\":\"open-id\"\n" + 
 				"}");
-		get("/mbs", (request, response) -> "{\n" + 
+		bank("/mbs", "{\n" + 
 				"\"bic\":\"MOLLITSWE5XXX\",\n" + 
 				"\"name\":\"Mbanken\",\n" + 
 				"\"countryCode\":\"SE\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/br", (request, response) -> "{\n" + 
+		bank("/br", "{\n" + 
 				"\"bic\":\"REPSP6XXX\",\n" + 
 				"\"name\":\"Banco Republico\",\n" + 
 				"\"countryCode\":\"SP\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/amt", (request, response) -> "{\n" + 
+		bank("/amt", "{\n" + 
 				"\"bic\":\"ANIMDEU7XXX\",\n" + 
 				"\"name\":\"Animat\",\n" + 
 				"\"countryCode\":\"DE\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/bdr", (request, response) -> "{\n" + 
+		bank("/bdr", "{\n" + 
 				"\"bic\":\"DODEU8XXX\",\n" + 
 				"\"name\":\"Bank Dariatur\",\n" + 
 				"\"countryCode\":\"CH\",\n" + 
 				"\"auth\":\"open-id\"\n" + 
 				"}");
-		get("/bds", (request, response) -> "{\n" + 
+		bank("/bds", "{\n" + 
 				"\"bic\":\"DOLORENOR9XXX\",\n" + 
 				"\"name\":\"Bank Dolores\",\n" + 
 				"\"countryCode\":\"NO\",\n" + 
 				"\"auth\":\"ssl-certificate\"\n" + 
 				"}");
-		get("/con", (request, response) -> "{\n" + 
+		bank("/con", "{\n" + 
 				"\"bic\":\"CONSSWE10XXX\",\n" + 
 				"\"name\":\"Constantie Bank\",\n" + 
 				"\"countryCode\":\"SE\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/nnb", (request, response) -> "{\n" + 
+		bank("/nnb", "{\n" + 
 				"\"bic\":\"NONNOR11XXX\",\n" + 
 				"\"name\":\"Norway National Bank\",\n" + 
 				"\"countryCode\":\"NO\",\n" + 
 				"\"auth\":\"ssl-certificate\"\n" + 
 				"}");
-		get("/nsb", (request, response) -> "{\n" + 
+		bank("/nsb", "{\n" + 
 				"\"bic\":\"NSAVNOR12XXX\",\n" + 
 				"\"name\":\"National Savings Bank\",\n" + 
 				"\"countryCode\":\"NO\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/bnu", (request, response) -> "{\n" + 
+		bank("/bnu", "{\n" + 
 				"\"bic\":\"MOLLITSP13XXX\",\n" + 
 				"\"name\":\"Bank Nulla\",\n" + 
 				"\"countryCode\":\"PT\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/onb", (request, response) -> "{\n" + 
+		bank("/onb", "{\n" + 
 				"\"bic\":\"VELITDEU14XXX\",\n" + 
 				"\"name\":\"One Nations Bank\",\n" + 
 				"\"countryCode\":\"DE\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/fgg", (request, response) -> "{\n" + 
+		bank("/fgg", "{\n" + 
 				"\"bic\":\"FIRSTSP15XXX\",\n" + 
 				"\"name\":\"First Guarantee Group\",\n" + 
 				"\"countryCode\":\"PT\",\n" + 
 				"\"auth\":\"ssl-certificate\"\n" + 
 				"}");
-		get("/blc", (request, response) -> "{\n" + 
+		bank("/blc", "{\n" + 
 				"\"bic\":\"ULLAMCOSP16XXX\",\n" + 
 				"\"name\":\"Bank Ullamco\",\n" + 
 				"\"countryCode\":\"SP\",\n" + 
 				"\"auth\":\"ssl-certificate\"\n" + 
 				"}");
-		get("/lnb", (request, response) -> "{\n" + 
+		bank("/lnb", "{\n" + 
 				"\"bic\":\"NULLASP17XXX\",\n" + 
 				"\"name\":\"Last National Bank\",\n" + 
 				"\"countryCode\":\"NO\",\n" + 
 				"\"auth\":\"ssl-certificate\"\n" + 
 				"}");
-		get("/scu", (request, response) -> "{\n" + 
+		bank("/scu", "{\n" + 
 				"\"bic\":\"SOARCDEU18XXX\",\n" + 
 				"\"name\":\"Soar Credit Union\",\n" + 
 				"\"countryCode\":\"DE\",\n" + 
 				"\"auth\":\"oauth\"\n" + 
 				"}");
-		get("/csh", (request, response) -> "{\n" + 
+		bank("/csh", "{\n" + 
 				"\"bic\":\"ETSWE19XXX\",\n" + 
 				"\"name\":\"Cash Financial\",\n" + 
 				"\"countryCode\":\"SE\",\n" + 
 				"\"auth\":\"ssl-certificate\"\n" + 
 				"}");
 	}
-}
\ No newline at end of file
+
+	private static void bank(String path, String body) {
+		banks.put(path, body);
+		get(path, (request, response) -> {
+			singleCalls.incrementAndGet();
+			return body;
+		});
+	}
+}
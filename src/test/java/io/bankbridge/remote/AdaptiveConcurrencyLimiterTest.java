@@ -0,0 +1,99 @@
+package io.bankbridge.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+	private static final long MICROS = TimeUnit.MICROSECONDS.toNanos(1);
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test:1", 4, 1, 16, 0, 0);
+
+	/**
+	 * Runs rounds of calls that use the whole limit, all with the given round trip time.
+	 */
+	private void fullRounds(int rounds, long rttNanos, boolean success) throws Exception {
+		for (int round = 0; round < rounds; round++) {
+			int limit = limiter.snapshot().getLimit();
+			for (int i = 0; i < limit; i++)
+				limiter.acquire();
+			for (int i = 0; i < limit; i++)
+				limiter.release(rttNanos, success);
+		}
+	}
+
+	@Test
+	public void testLimitGrowsWhileLatencyIsStable() throws Exception {
+		fullRounds(40, MILLIS, true);
+		assertTrue(limiter.snapshot().getLimit() > 4);
+		fullRounds(400, MILLIS, true);
+		assertEquals(16, limiter.snapshot().getLimit());
+	}
+
+	@Test
+	public void testSubMillisecondJitterIsNotCongestion() throws Exception {
+		for (int round = 0; round < 100; round++) {
+			for (int i = 0; i < 4; i++)
+				limiter.acquire();
+			// 80 to 800 microseconds, ten times the fastest call
+			for (int i = 0; i < 4; i++)
+				limiter.release((80 + (round * 4 + i) % 10 * 80) * MICROS, true);
+		}
+		assertTrue(limiter.snapshot().getLimit() >= 4);
+	}
+
+	@Test
+	public void testLimitBacksOffWhenLatencyGrows() throws Exception {
+		fullRounds(40, 10 * MILLIS, true);
+		int grown = limiter.snapshot().getLimit();
+		fullRounds(20, 100 * MILLIS, true);
+		assertTrue(limiter.snapshot().getLimit() < grown);
+	}
+
+	@Test
+	public void testSingleSlowCallDoesNotBackOff() throws Exception {
+		fullRounds(10, 10 * MILLIS, true);
+		int limit = limiter.snapshot().getLimit();
+		limiter.acquire();
+		limiter.release(100 * MILLIS, true);
+		fullRounds(1, 10 * MILLIS, true);
+		assertTrue(limiter.snapshot().getLimit() >= limit);
+	}
+
+	@Test
+	public void testErrorsHalveTheLimitDownToTheMinimum() throws Exception {
+		limiter.acquire();
+		limiter.release(MILLIS, false);
+		assertEquals(2, limiter.snapshot().getLimit());
+		fullRounds(5, MILLIS, false);
+		assertEquals(1, limiter.snapshot().getLimit());
+	}
+
+	@Test
+	public void testAbandonedCallsFreeTheSlotWithoutSample() throws Exception {
+		for (int i = 0; i < 4; i++)
+			limiter.acquire();
+		for (int i = 0; i < 4; i++)
+			limiter.releaseWithoutSample();
+		assertEquals(4, limiter.snapshot().getLimit());
+		assertEquals(0, limiter.snapshot().getInFlight());
+	}
+
+	@Test
+	public void testCallsOverTheLimitAreRejectedWithoutQueue() throws Exception {
+		for (int i = 0; i < 4; i++)
+			limiter.acquire();
+		try {
+			limiter.acquire();
+			fail("call over the limit was admitted");
+		} catch (LimitExceededException e) {
+			assertEquals(1, limiter.snapshot().getRejected());
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package io.bankbridge.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RefreshSchedulerTest {
+
+	@Test
+	public void testPrefersPopularProvidersWithinBudget() throws Exception {
+		AtomicLong clock = new AtomicLong();
+		List<String> refreshed = new ArrayList<>();
+		RefreshScheduler scheduler = new RefreshScheduler(1, 1000, 100000, refreshed::add, Runnable::run, clock::get);
+		scheduler.registerAll(Arrays.asList("a", "b", "c"));
+		for (int i = 0; i < 10; i++)
+			scheduler.recordDemand("b");
+
+		clock.set(TimeUnit.SECONDS.toNanos(10));
+		assertEquals(1, scheduler.tick());
+		assertEquals(Arrays.asList("b"), refreshed);
+		assertEquals(0, scheduler.tick());
+		assertEquals(2, scheduler.getBacklog());
+
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		assertEquals(1, scheduler.tick());
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		assertEquals(1, scheduler.tick());
+		assertTrue(refreshed.containsAll(Arrays.asList("a", "b", "c")));
+
+		// b is due again long before the unpopular providers
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(20));
+		assertEquals(1, scheduler.tick());
+		assertEquals("b", refreshed.get(3));
+	}
+}
@@ -0,0 +1,32 @@
+package io.bankbridge.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.bankbridge.model.BankModel;
+
+public class SizeLimitedInputStreamTest {
+
+	@Test
+	public void testFailsOnOversizedPayload() throws Exception {
+		byte[] bank = "{\"bic\":\"DODEU8XXX\",\"name\":\"Bank Dariatur\"}".getBytes(StandardCharsets.UTF_8);
+		try (SizeLimitedInputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(bank), bank.length)) {
+			assertEquals("DODEU8XXX", new ObjectMapper().readValue((InputStream) in, BankModel.class).getBic());
+			assertEquals(bank.length, in.getCount());
+		}
+		try (SizeLimitedInputStream in = new SizeLimitedInputStream(new ByteArrayInputStream(bank), 16)) {
+			new ObjectMapper().readValue((InputStream) in, BankModel.class);
+			fail("oversized payload was parsed");
+		} catch (PayloadTooLargeException e) {
+			// expected
+		}
+	}
+}
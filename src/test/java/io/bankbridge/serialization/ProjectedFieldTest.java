@@ -0,0 +1,70 @@
+package io.bankbridge.serialization;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import io.bankbridge.model.BankModel;
+import io.bankbridge.model.Views;
+
+/**
+ * Guards the hand-written projection against the Jackson annotations of {@link BankModel} it mirrors.
+ */
+public class ProjectedFieldTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void testEveryBankPropertyIsProjected() {
+		Set<String> properties = new TreeSet<>();
+		for (BeanPropertyDefinition property : objectMapper.getSerializationConfig()
+				.introspect(objectMapper.constructType(BankModel.class)).findProperties())
+			properties.add(property.getName());
+
+		Set<String> projected = new TreeSet<>();
+		for (ProjectedField field : ProjectedField.values())
+			projected.add(field.getName());
+
+		assertEquals(properties, projected);
+	}
+
+	@Test
+	public void testFullProjectionWritesLikeJacksonViews() throws Exception {
+		BankModel complete = bank("auth", new ArrayList<>(Arrays.asList("accounts", "payments")));
+		BankModel sparse = bank(null, null);
+		for (Class<?> view : new Class<?>[] { Views.Cache.class, Views.RemoteCall.class }) {
+			for (BankModel bankModel : new BankModel[] { complete, sparse }) {
+				assertEquals(view.getSimpleName(), objectMapper.writerWithView(view).writeValueAsString(bankModel),
+						project(BankSerializer.of(view, null), bankModel));
+			}
+		}
+	}
+
+	private String project(BankSerializer serializer, BankModel bankModel) throws Exception {
+		StringWriter out = new StringWriter();
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+			serializer.write(generator, bankModel);
+		}
+		return out.toString();
+	}
+
+	private static BankModel bank(String auth, ArrayList<String> products) {
+		BankModel bankModel = new BankModel();
+		bankModel.setBic("TESTLU1XXX");
+		bankModel.setName("Test Bank");
+		bankModel.setCountryCode("LU");
+		bankModel.setAuth(auth);
+		bankModel.setProducts(products);
+		return bankModel;
+	}
+}
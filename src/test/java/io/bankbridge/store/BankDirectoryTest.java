@@ -0,0 +1,140 @@
+package io.bankbridge.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import io.bankbridge.model.BankModel;
+import io.bankbridge.query.SortSpec;
+
+/**
+ * Checks every index of the directory against a {@link LinkedHashMap} in load order over random sequences of
+ * upserts, country changes and removals.
+ */
+public class BankDirectoryTest {
+
+	private static final String[] COUNTRIES = { "SE", "NO", "CH", "DE" };
+
+	// few names, so the sorted indexes have ties to keep in load order
+	private static final String[] NAMES = { "Alpha", "Beta", "Gamma" };
+
+	private static final SortSpec BY_NAME = SortSpec.parse("name");
+
+	private static final SortSpec BY_COUNTRY_DESC_NAME = SortSpec.parse("-countryCode,name");
+
+	@Test
+	public void testRandomChangesMatchLinkedHashMap() {
+		Random random = new Random(42);
+		BankDirectory directory = BankDirectory.empty().withSortedIndex(BY_NAME);
+		LinkedHashMap<String, BankModel> expected = new LinkedHashMap<>();
+		for (int i = 0; i < 3000; i++) {
+			directory = change(random, expected, directory);
+			if (i == 1000)
+				// built late, from the banks of that version, and maintained from then on
+				directory = directory.withSortedIndex(BY_COUNTRY_DESC_NAME);
+			if (i % 50 == 0 || i == 2999)
+				assertMatches(expected, directory, i > 1000);
+		}
+	}
+
+	@Test
+	public void testVersionCountsChanges() {
+		BankDirectory directory = BankDirectory.empty();
+		directory = directory.upsert(bank("BIC1", "SE", "Alpha"));
+		directory = directory.upsert(bank("BIC1", "NO", "Alpha"));
+		assertEquals(2, directory.getVersion());
+		assertSame(directory, directory.remove("UNKNOWN"));
+		assertEquals(3, directory.remove("BIC1").getVersion());
+		assertNull(directory.sorted(BY_NAME));
+	}
+
+	@Test
+	public void testOldVersionsUnchanged() {
+		Random random = new Random(7);
+		List<BankDirectory> versions = new ArrayList<>();
+		List<LinkedHashMap<String, BankModel>> expectedVersions = new ArrayList<>();
+		BankDirectory directory = BankDirectory.empty().withSortedIndex(BY_NAME);
+		LinkedHashMap<String, BankModel> expected = new LinkedHashMap<>();
+		for (int i = 0; i < 500; i++) {
+			directory = change(random, expected, directory);
+			versions.add(directory);
+			expectedVersions.add(new LinkedHashMap<>(expected));
+		}
+		for (int i = 0; i < versions.size(); i++)
+			assertMatches(expectedVersions.get(i), versions.get(i), false);
+	}
+
+	/**
+	 * Applies one random change to both the directory and the expected banks: a removal in a third of the cases,
+	 * otherwise an upsert that may move the bank to another country.
+	 */
+	private static BankDirectory change(Random random, LinkedHashMap<String, BankModel> expected,
+			BankDirectory directory) {
+		String bic = "BIC" + random.nextInt(50);
+		if (random.nextInt(3) == 0) {
+			expected.remove(bic);
+			return directory.remove(bic);
+		}
+		BankModel bankModel = bank(bic, COUNTRIES[random.nextInt(COUNTRIES.length)],
+				NAMES[random.nextInt(NAMES.length)]);
+		// a replaced bank keeps its place in load order, as in a LinkedHashMap
+		expected.put(bic, bankModel);
+		return directory.upsert(bankModel);
+	}
+
+	private static void assertMatches(LinkedHashMap<String, BankModel> expected, BankDirectory directory,
+			boolean countryIndex) {
+		List<BankModel> loadOrder = new ArrayList<>(expected.values());
+		assertEquals(expected.size(), directory.size());
+		assertEquals(bics(loadOrder), bics(directory.all()));
+		for (Map.Entry<String, BankModel> entry : expected.entrySet())
+			assertSame(entry.getValue(), directory.get(entry.getKey()));
+
+		TreeMap<String, BankModel> byBic = new TreeMap<>(expected);
+		assertEquals(new ArrayList<>(byBic.keySet()), bics(directory.byBicAfter(null)));
+		for (int i = -1; i <= 50; i++) {
+			String after = i < 0 ? "" : "BIC" + i;
+			assertEquals(after, new ArrayList<>(byBic.tailMap(after, false).keySet()),
+					bics(directory.byBicAfter(after)));
+		}
+
+		for (String countryCode : COUNTRIES)
+			assertEquals(countryCode, bics(loadOrder.stream()
+					.filter(bankModel -> countryCode.equals(bankModel.getCountryCode()))
+					.collect(Collectors.toList())), bics(directory.byCountry(countryCode)));
+
+		// a stable sort of the banks in load order
+		List<BankModel> sorted = new ArrayList<>(loadOrder);
+		sorted.sort(BY_NAME.getComparator());
+		assertEquals(bics(sorted), bics(directory.sorted(BY_NAME)));
+		if (countryIndex) {
+			sorted = new ArrayList<>(loadOrder);
+			sorted.sort(BY_COUNTRY_DESC_NAME.getComparator());
+			assertEquals(bics(sorted), bics(directory.sorted(BY_COUNTRY_DESC_NAME)));
+		}
+	}
+
+	private static List<String> bics(Iterable<BankModel> bankModels) {
+		List<String> bics = new ArrayList<>();
+		bankModels.forEach(bankModel -> bics.add(bankModel.getBic()));
+		return bics;
+	}
+
+	private static BankModel bank(String bic, String countryCode, String name) {
+		BankModel bankModel = new BankModel();
+		bankModel.setBic(bic);
+		bankModel.setCountryCode(countryCode);
+		bankModel.setName(name);
+		return bankModel;
+	}
+}
@@ -0,0 +1,96 @@
+package io.bankbridge.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Checks the treap against {@link TreeMap} over random sequences of changes.
+ */
+public class PersistentTreapTest {
+
+	private static final int KEYS = 200;
+
+	@Test
+	public void testRandomChangesMatchTreeMap() {
+		Random random = new Random(42);
+		PersistentTreap<Integer, String> treap = PersistentTreap.empty(Comparator.naturalOrder());
+		TreeMap<Integer, String> expected = new TreeMap<>();
+		for (int i = 0; i < 5000; i++) {
+			int key = random.nextInt(KEYS);
+			if (random.nextInt(3) == 0) {
+				treap = treap.remove(key);
+				expected.remove(key);
+			} else {
+				treap = treap.put(key, "v" + i);
+				expected.put(key, "v" + i);
+			}
+			assertEquals(expected.size(), treap.size());
+			int probe = random.nextInt(KEYS);
+			assertEquals(expected.get(probe), treap.get(probe));
+			if (i % 100 == 0)
+				assertEquals(new ArrayList<>(expected.values()), list(treap.values()));
+		}
+		assertEquals(new ArrayList<>(expected.values()), list(treap.values()));
+	}
+
+	@Test
+	public void testRemoveAbsentKeyReturnsSameMap() {
+		PersistentTreap<Integer, String> treap = PersistentTreap.<Integer, String>empty(Comparator.naturalOrder())
+				.put(1, "one");
+		assertSame(treap, treap.remove(2));
+		assertEquals(0, treap.remove(1).size());
+	}
+
+	@Test
+	public void testValuesAfterBoundaries() {
+		PersistentTreap<Integer, String> treap = PersistentTreap.empty(Comparator.naturalOrder());
+		TreeMap<Integer, String> expected = new TreeMap<>();
+		// even keys only, so every odd probe falls between two present keys
+		for (int key = 0; key < KEYS; key += 2) {
+			treap = treap.put(key, "v" + key);
+			expected.put(key, "v" + key);
+		}
+		for (int after = -1; after <= KEYS; after++)
+			assertEquals("after " + after, new ArrayList<>(expected.tailMap(after, false).values()),
+					list(treap.valuesAfter(after)));
+		assertEquals(0, list(PersistentTreap.<Integer, String>empty(Comparator.naturalOrder()).valuesAfter(0))
+				.size());
+	}
+
+	@Test
+	public void testOldVersionsUnchanged() {
+		Random random = new Random(7);
+		List<PersistentTreap<Integer, String>> versions = new ArrayList<>();
+		List<List<String>> expectedVersions = new ArrayList<>();
+		PersistentTreap<Integer, String> treap = PersistentTreap.empty(Comparator.naturalOrder());
+		TreeMap<Integer, String> expected = new TreeMap<>();
+		for (int i = 0; i < 1000; i++) {
+			int key = random.nextInt(KEYS / 4);
+			if (random.nextInt(3) == 0) {
+				treap = treap.remove(key);
+				expected.remove(key);
+			} else {
+				treap = treap.put(key, "v" + i);
+				expected.put(key, "v" + i);
+			}
+			versions.add(treap);
+			expectedVersions.add(new ArrayList<>(expected.values()));
+		}
+		for (int i = 0; i < versions.size(); i++)
+			assertEquals("version " + i, expectedVersions.get(i), list(versions.get(i).values()));
+	}
+
+	private static <V> List<V> list(Iterable<V> values) {
+		List<V> list = new ArrayList<>();
+		values.forEach(list::add);
+		return list;
+	}
+}